@@ -0,0 +1,240 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import tagcloud.bench.TagCloudOps;
+
+/**
+ * Implementation of {@code TagCloudOps} calling the tag cloud generator, which
+ * only code in the default package can refer to.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudBenchOps implements TagCloudOps {
+
+    /**
+     * Renderer of the calling thread, replaced when the font range changes.
+     */
+    private final ThreadLocal<CloudRenderer> renderers = new ThreadLocal<>();
+
+    /**
+     * Returns a renderer of the calling thread for the given font range.
+     *
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @return the renderer
+     */
+    private CloudRenderer renderer(int minFontSize, int maxFontSize) {
+        CloudRenderer renderer = this.renderers.get();
+        if (renderer == null || renderer.minFontSize() != minFontSize
+                || renderer.maxFontSize() != maxFontSize) {
+            renderer = new CloudRenderer(minFontSize, maxFontSize,
+                    Charset.defaultCharset());
+            this.renderers.set(renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * Accumulator counting into a {@code ConcurrentHashMap} of
+     * {@code LongAdder}s: a {@code String} per word, and one striped
+     * increment per word.
+     */
+    private static final class AdderAccumulator implements WordAccumulator {
+
+        /**
+         * Count of each word.
+         */
+        private final ConcurrentHashMap<String, LongAdder> counts =
+                new ConcurrentHashMap<>();
+
+        /**
+         * Adds one occurrence of {@code word}.
+         *
+         * @param word
+         *            the word
+         */
+        private void add(String word) {
+            LongAdder count = this.counts.get(word);
+            if (count == null) {
+                count = this.counts.computeIfAbsent(word, w -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        @Override
+        public void accept(CharSequence text) {
+            TagCloud.forEachWord(text.toString(), this::add);
+        }
+
+        @Override
+        public List<Map.Entry<String, Integer>> snapshotTopN(int n) {
+            WordCounts words = new WordCounts();
+            for (Map.Entry<String, LongAdder> e : this.counts.entrySet()) {
+                words.add(e.getKey(), e.getValue().intValue());
+            }
+            return TagCloud.topWords(words, n);
+        }
+    }
+
+    @Override
+    public WordAccumulator newAccumulator(String kind) {
+        switch (kind) {
+            case "shards":
+                ConcurrentWordCounter counter = new ConcurrentWordCounter();
+                return new WordAccumulator() {
+                    @Override
+                    public void accept(CharSequence text) {
+                        counter.accept(text);
+                    }
+
+                    @Override
+                    public List<Map.Entry<String, Integer>> snapshotTopN(
+                            int n) {
+                        return counter.snapshotTopN(n);
+                    }
+                };
+            case "adders":
+                return new AdderAccumulator();
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown accumulator: " + kind);
+        }
+    }
+
+    @Override
+    public WordIndex newTopWordIndex(Map<String, Integer> words, int n) {
+        TopWordIndex index = new TopWordIndex(new WordCounts(words), n);
+        return new WordIndex() {
+            @Override
+            public void increment(String word) {
+                index.increment(word);
+            }
+
+            @Override
+            public List<Map.Entry<String, Integer>> top() {
+                return index.toSortedList();
+            }
+        };
+    }
+
+    @Override
+    public int scanWords(String line) {
+        int n = 0;
+        int i = 0;
+        while (i < line.length()) {
+            i += TagCloud.nextWordOrSeparator(line, i).length();
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public Map<String, Integer> generateWordMap(Path file, String tokenizer,
+            int threads) throws IOException {
+        switch (tokenizer) {
+            case "reader":
+                try (BufferedReader in = Files.newBufferedReader(file,
+                        Charset.defaultCharset())) {
+                    return TagCloud.generateWordMap(in);
+                }
+            case "mapped":
+                return TagCloud.generateWordMap(file);
+            case "parallel":
+                return TagCloud.generateWordMap(file, threads);
+            case "vector":
+                ByteTokenizer.Splitter simd = ByteTokenizer.simd();
+                if (simd == null) {
+                    throw new IllegalStateException(
+                            "Vector API splitter not available");
+                }
+                WordCounts wordCount = new WordCounts();
+                ByteTokenizer.countFile(file, Charset.defaultCharset(), simd)
+                        .addTo(wordCount);
+                return wordCount;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown tokenizer: " + tokenizer);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countNGrams(Path file, int n, int top)
+            throws IOException {
+        WordCounts words = new WordCounts();
+        NGramCounter counter = new NGramCounter(n, words);
+        try (BufferedReader in = Files.newBufferedReader(file,
+                Charset.defaultCharset())) {
+            TagCloud.countWords(in, words, counter);
+        }
+        return counter.top(top);
+    }
+
+    @Override
+    public Map<String, Integer> copy(Map<String, Integer> words) {
+        return new WordCounts(words);
+    }
+
+    @Override
+    public List<Map.Entry<String, Integer>> sort(Map<String, Integer> words,
+            int n) {
+        return TagCloud.sort(words, n);
+    }
+
+    @Override
+    public int calculateFontSize(String word, int count, int minCounts,
+            int maxCounts, int minFontSize, int maxFontSize) {
+        return TagCloud.calculateFontSize(word, count, minCounts, maxCounts,
+                minFontSize, maxFontSize);
+    }
+
+    @Override
+    public void writeHeader(String name, int numWords, PrintWriter html) {
+        TagCloud.writeHeader(name, numWords, html);
+    }
+
+    @Override
+    public void populateCloud(String name,
+            List<Map.Entry<String, Integer>> sortedWords, PrintWriter html,
+            int minFontSize, int maxFontSize) {
+        TagCloud.populateCloud(name, sortedWords, html, minFontSize,
+                maxFontSize);
+    }
+
+    @Override
+    public void generateCSS(int smallestFont, int largestFont,
+            PrintWriter css) {
+        TagCloud.generateCSS(smallestFont, largestFont, css);
+    }
+
+    @Override
+    public void writeCloud(WritableByteChannel channel, String name,
+            List<Map.Entry<String, Integer>> sortedWords, int minFontSize,
+            int maxFontSize) throws IOException {
+        this.renderer(minFontSize, maxFontSize).writeCloud(channel, name,
+                sortedWords, null);
+    }
+
+    @Override
+    public void writeStylesheet(WritableByteChannel channel, int minFontSize,
+            int maxFontSize) throws IOException {
+        ByteBuffer css = ByteBuffer
+                .wrap(this.renderer(minFontSize, maxFontSize).stylesheet());
+        while (css.hasRemaining()) {
+            channel.write(css);
+        }
+    }
+
+}
@@ -0,0 +1,411 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and summarizes them: the score of
+ * every benchmark, its throughput in MB/s when every operation consumes a
+ * whole corpus, and the bytes it allocates per operation. Usage:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar [--save &lt;file.csv&gt;]
+ *         [--baseline &lt;file.csv&gt;] [JMH options] [benchmark regexps]
+ * </pre>
+ *
+ * With {@code --save} the summary is written to a CSV file; with
+ * {@code --baseline} every result is compared with the one of a CSV file saved
+ * by an earlier run.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Header of the CSV files.
+     */
+    private static final String CSV_HEADER = "benchmark,params,score,unit,"
+            + "mb_per_s,alloc_bytes_per_op";
+
+    /**
+     * Label of the secondary result of the GC profiler giving the bytes
+     * allocated per operation.
+     */
+    private static final String ALLOC_LABEL = "gc.alloc.rate.norm";
+
+    /**
+     * Summary of the result of one benchmark with one set of parameters.
+     */
+    private static final class Row {
+
+        /**
+         * Benchmark name, without the package.
+         */
+        private final String benchmark;
+
+        /**
+         * Parameters as name=value pairs separated by spaces.
+         */
+        private final String params;
+
+        /**
+         * Primary score.
+         */
+        private final double score;
+
+        /**
+         * Unit of the score.
+         */
+        private final String unit;
+
+        /**
+         * Throughput in MB/s, or NaN if not applicable.
+         */
+        private final double mbPerSec;
+
+        /**
+         * Bytes allocated per operation, or NaN if not measured.
+         */
+        private final double allocPerOp;
+
+        /**
+         * Creates a row.
+         *
+         * @param benchmark
+         *            benchmark name
+         * @param params
+         *            parameters
+         * @param score
+         *            primary score
+         * @param unit
+         *            unit of the score
+         * @param mbPerSec
+         *            throughput in MB/s, or NaN
+         * @param allocPerOp
+         *            bytes allocated per operation, or NaN
+         */
+        Row(String benchmark, String params, double score, String unit,
+                double mbPerSec, double allocPerOp) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.score = score;
+            this.unit = unit;
+            this.mbPerSec = mbPerSec;
+            this.allocPerOp = allocPerOp;
+        }
+
+        /**
+         * Returns the key identifying the benchmark and its parameters.
+         *
+         * @return key of this row
+         */
+        String key() {
+            return this.benchmark + " " + this.params;
+        }
+
+        /**
+         * Returns this row as a CSV line.
+         *
+         * @return CSV line
+         */
+        String toCsv() {
+            return String.join(",", this.benchmark, this.params,
+                    Double.toString(this.score), this.unit,
+                    Double.toString(this.mbPerSec),
+                    Double.toString(this.allocPerOp));
+        }
+
+        /**
+         * Parses a CSV line written by {@code toCsv}.
+         *
+         * @param line
+         *            CSV line
+         * @return the row
+         */
+        static Row fromCsv(String line) {
+            String[] f = line.split(",", -1);
+            return new Row(f[0], f[1], Double.parseDouble(f[2]), f[3],
+                    Double.parseDouble(f[4]), Double.parseDouble(f[5]));
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Returns the throughput in MB/s of a benchmark whose every operation
+     * consumes the whole corpus named by its "corpus" parameter, or NaN if it
+     * is not such a benchmark.
+     *
+     * @param params
+     *            parameters of the benchmark
+     * @param score
+     *            score of the benchmark
+     * @return throughput in MB/s, or NaN
+     * @throws IOException
+     *             if the size of the corpus cannot be read
+     */
+    private static double mbPerSec(BenchmarkParams params, double score)
+            throws IOException {
+        String benchmark = params.getBenchmark();
+        boolean wholeCorpus = benchmark.contains(".TokenizeBenchmark.")
+                || benchmark.contains(".EndToEndBenchmark.");
+        if (!wholeCorpus || params.getMode() != Mode.Throughput
+                || params.getParam("corpus") == null) {
+            return Double.NaN;
+        }
+        long bytes = Files.size(Corpora.path(params.getParam("corpus")));
+        double opsPerSec = score
+                * params.getTimeUnit().convert(1, TimeUnit.SECONDS);
+        return opsPerSec * bytes / (1 << 20);
+    }
+
+    /**
+     * Summarizes the results of a run.
+     *
+     * @param results
+     *            results of the run
+     * @return one row per benchmark and set of parameters
+     * @throws IOException
+     *             if the size of a corpus cannot be read
+     */
+    private static List<Row> summarize(Collection<RunResult> results)
+            throws IOException {
+        List<Row> rows = new ArrayList<>();
+        for (RunResult r : results) {
+            BenchmarkParams params = r.getParams();
+            StringBuilder p = new StringBuilder();
+            for (String key : params.getParamsKeys()) {
+                if (p.length() > 0) {
+                    p.append(' ');
+                }
+                p.append(key).append('=').append(params.getParam(key));
+            }
+            // runs of a thread count sweep differ only in their threads
+            if (params.getThreads() != 1) {
+                if (p.length() > 0) {
+                    p.append(' ');
+                }
+                p.append("threads=").append(params.getThreads());
+            }
+            Result<?> primary = r.getPrimaryResult();
+            double alloc = Double.NaN;
+            // JMH declares the secondary results with the raw Result type
+            for (String label : r.getSecondaryResults().keySet()) {
+                if (label.endsWith(ALLOC_LABEL)) {
+                    Result<?> secondary = r.getSecondaryResults().get(label);
+                    alloc = secondary.getScore();
+                }
+            }
+            String benchmark = params.getBenchmark();
+            benchmark = benchmark.substring(benchmark.lastIndexOf('.',
+                    benchmark.lastIndexOf('.') - 1) + 1);
+            rows.add(new Row(benchmark, p.toString(), primary.getScore(),
+                    primary.getScoreUnit(),
+                    mbPerSec(params, primary.getScore()), alloc));
+        }
+        return rows;
+    }
+
+    /**
+     * Formats a value with the given format, or "-" if it is NaN.
+     *
+     * @param format
+     *            format of the value
+     * @param value
+     *            the value
+     * @return formatted value
+     */
+    private static String format(String format, double value) {
+        if (Double.isNaN(value)) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, format, value);
+    }
+
+    /**
+     * Returns the change from {@code before} to {@code after} as a
+     * percentage, or "-" if either is unknown.
+     *
+     * @param before
+     *            baseline value
+     * @param after
+     *            new value
+     * @return formatted change
+     */
+    private static String change(double before, double after) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before == 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%",
+                (after - before) / before * 100);
+    }
+
+    /**
+     * Prints the summary of a run, compared with a baseline if one is given.
+     *
+     * @param rows
+     *            summary of the run
+     * @param baseline
+     *            summary of the baseline run by key, or null
+     */
+    private static void print(List<Row> rows, Map<String, Row> baseline) {
+        String format = "%-44s %-40s %14s %-8s %10s %14s";
+        if (baseline != null) {
+            format += " %9s %9s";
+        }
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, format, "Benchmark",
+                "Params", "Score", "Unit", "MB/s", "Alloc B/op", "Score",
+                "Alloc"));
+        for (Row row : rows) {
+            Object[] columns = {row.benchmark, row.params,
+                format("%.3f", row.score), row.unit,
+                format("%.1f", row.mbPerSec), format("%.0f", row.allocPerOp),
+                "", ""};
+            if (baseline != null) {
+                Row old = baseline.get(row.key());
+                if (old != null) {
+                    columns[6] = change(old.score, row.score);
+                    columns[7] = change(old.allocPerOp, row.allocPerOp);
+                } else {
+                    columns[6] = "new";
+                    columns[7] = "new";
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, format, columns));
+        }
+    }
+
+    /**
+     * Reads a summary saved by {@code --save}.
+     *
+     * @param file
+     *            CSV file
+     * @return rows of the summary by key
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static Map<String, Row> readCsv(Path file) throws IOException {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!CSV_HEADER.equals(line)) {
+                throw new IOException(file + " is not a benchmark summary");
+            }
+            line = in.readLine();
+            while (line != null) {
+                if (!line.isEmpty()) {
+                    Row row = Row.fromCsv(line);
+                    rows.put(row.key(), row);
+                }
+                line = in.readLine();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes a summary to a CSV file.
+     *
+     * @param file
+     *            CSV file
+     * @param rows
+     *            rows of the summary
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void writeCsv(Path file, List<Row> rows)
+            throws IOException {
+        try (PrintWriter out = new PrintWriter(
+                Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println(CSV_HEADER);
+            for (Row row : rows) {
+                out.println(row.toCsv());
+            }
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        Path save = null;
+        Path baselineFile = null;
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        for (int i = 0; i < jmhArgs.size() - 1; i++) {
+            if (jmhArgs.get(i).equals("--save")) {
+                save = Paths.get(jmhArgs.remove(i + 1));
+                jmhArgs.remove(i--);
+            } else if (jmhArgs.get(i).equals("--baseline")) {
+                baselineFile = Paths.get(jmhArgs.remove(i + 1));
+                jmhArgs.remove(i--);
+            }
+        }
+
+        try {
+            Map<String, Row> baseline = null;
+            if (baselineFile != null) {
+                baseline = readCsv(baselineFile);
+            }
+            CommandLineOptions cmd = new CommandLineOptions(
+                    jmhArgs.toArray(new String[0]));
+            if (cmd.shouldHelp() || cmd.shouldList()
+                    || cmd.shouldListProfilers()
+                    || cmd.shouldListResultFormats()) {
+                // let JMH print what was asked for
+                org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+                return;
+            }
+            Options options = new OptionsBuilder().parent(cmd)
+                    .addProfiler(GCProfiler.class).build();
+            List<Row> rows = summarize(new Runner(options).run());
+            print(rows, baseline);
+            if (save != null) {
+                writeCsv(save, rows);
+                System.out.println("Saved summary to " + save);
+            }
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: "
+                    + e.getMessage());
+            System.exit(2);
+        } catch (RunnerException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Benchmark of many threads feeding one shared word-count accumulator a line
+ * at a time, with the per-thread shards of {@code ConcurrentWordCounter} and
+ * with a {@code ConcurrentHashMap} of {@code LongAdder}s. {@code accept} has
+ * every thread counting; the {@code underSnapshots} group has one thread
+ * taking top-100 snapshots while seven count. The number of threads is set
+ * with JMH's {@code -t} option, so a sweep runs it once per count:
+ *
+ * <pre>
+ * for t in 1 2 4 8 16 32 64; do
+ *     java -jar target/benchmarks.jar ContentionBenchmark.accept -t $t
+ * done
+ * </pre>
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Number of words selected by a snapshot.
+     */
+    private static final int SNAPSHOT_SIZE = 100;
+
+    /**
+     * Kind of accumulator: "shards" or "adders".
+     */
+    @Param({"shards", "adders"})
+    public String kind;
+
+    /**
+     * Name of the corpus whose lines are counted.
+     */
+    @Param({"lesmiz"})
+    public String corpus;
+
+    /**
+     * Lines of the corpus.
+     */
+    private List<String> lines;
+
+    /**
+     * Accumulator shared by all threads.
+     */
+    private TagCloudOps.WordAccumulator accumulator;
+
+    /**
+     * Reads the lines of the corpus and creates the accumulator.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.lines = Files.readAllLines(Corpora.path(this.corpus),
+                Charset.defaultCharset());
+        this.accumulator = OPS.newAccumulator(this.kind);
+    }
+
+    /**
+     * Position of a thread in the lines of the corpus.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        /**
+         * Index of the next line to count.
+         */
+        private int next;
+
+        /**
+         * Starts each thread at a different line, so that the threads do not
+         * count the same words at the same time.
+         *
+         * @param bench
+         *            the benchmark
+         * @param thread
+         *            parameters of the thread
+         */
+        @Setup
+        public void setUp(ContentionBenchmark bench, ThreadParams thread) {
+            this.next = (int) ((long) bench.lines.size()
+                    * thread.getThreadIndex() / thread.getThreadCount());
+        }
+
+        /**
+         * Returns the next line to count.
+         *
+         * @param lines
+         *            lines of the corpus
+         * @return the next line
+         */
+        String nextLine(List<String> lines) {
+            String line = lines.get(this.next);
+            this.next++;
+            if (this.next == lines.size()) {
+                this.next = 0;
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Counts the next line of the calling thread.
+     *
+     * @param cursor
+     *            position of the calling thread
+     */
+    @Benchmark
+    public void accept(Cursor cursor) {
+        this.accumulator.accept(cursor.nextLine(this.lines));
+    }
+
+    /**
+     * Counts the next line of the calling thread while snapshots are taken.
+     *
+     * @param cursor
+     *            position of the calling thread
+     */
+    @Benchmark
+    @Group("underSnapshots")
+    @GroupThreads(7)
+    public void acceptLine(Cursor cursor) {
+        this.accumulator.accept(cursor.nextLine(this.lines));
+    }
+
+    /**
+     * Takes a top-100 snapshot while other threads count.
+     *
+     * @return the selected words
+     */
+    @Benchmark
+    @Group("underSnapshots")
+    @GroupThreads(1)
+    public List<Map.Entry<String, Integer>> snapshotTopN() {
+        return this.accumulator.snapshotTopN(SNAPSHOT_SIZE);
+    }
+
+}
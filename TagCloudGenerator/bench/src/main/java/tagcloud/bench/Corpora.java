@@ -0,0 +1,213 @@
+package tagcloud.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Input corpora of the benchmarks. A corpus is either one of the bundled
+ * texts, named after its file in {@code data/} (e.g. "lesmiz"), or a
+ * synthetic text named "zipf-SIZE" (e.g. "zipf-10m", "zipf-2g") whose word
+ * frequencies follow Zipf's law. Synthetic corpora, and gzip copies of any
+ * corpus, are generated on first use into {@code target/corpora} and reused
+ * afterwards.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class Corpora {
+
+    /**
+     * Name of the system property giving the folder of the bundled texts.
+     */
+    public static final String DATA_PROPERTY = "tagcloud.data";
+
+    /**
+     * Number of distinct words of synthetic corpora.
+     */
+    private static final int VOCABULARY = 1 << 20;
+
+    /**
+     * Exponent of the Zipf distribution of synthetic corpora.
+     */
+    private static final double ZIPF_EXPONENT = 1.07;
+
+    /**
+     * Separators written between words of synthetic corpora, most often a
+     * single space.
+     */
+    private static final String[] SEPARATORS = {" ", " ", " ", " ", " ", " ",
+        " ", " ", ", ", ". ", "\n", "; ", " - ", "!\n", "? ", "\"", "'"};
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Corpora() {
+    }
+
+    /**
+     * Returns the path of the named corpus, generating it if it is synthetic
+     * and does not exist yet.
+     *
+     * @param name
+     *            name of the corpus
+     * @return path of the corpus file
+     * @throws IOException
+     *             if a synthetic corpus cannot be generated
+     */
+    public static Path path(String name) throws IOException {
+        if (name.startsWith("zipf-")) {
+            Path file = Paths.get("target", "corpora", name + ".txt");
+            if (!Files.exists(file)) {
+                generateZipf(file, parseSize(name.substring("zipf-".length())));
+            }
+            return file;
+        }
+        return Paths.get(System.getProperty(DATA_PROPERTY, "../data"),
+                name + ".txt");
+    }
+
+    /**
+     * Returns the path of a gzip compressed copy of the named corpus,
+     * compressing it if it does not exist yet.
+     *
+     * @param name
+     *            name of the corpus
+     * @return path of the compressed corpus file
+     * @throws IOException
+     *             if the corpus cannot be read or compressed
+     */
+    public static Path gzipPath(String name) throws IOException {
+        Path file = Paths.get("target", "corpora", name + ".txt.gz");
+        if (!Files.exists(file)) {
+            Path source = path(name);
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = new GZIPOutputStream(
+                    Files.newOutputStream(tmp), 1 << 16)) {
+                Files.copy(source, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Parses a size such as "512k", "10m" or "2g" into bytes.
+     *
+     * @param size
+     *            size with an optional k, m or g suffix
+     * @return number of bytes
+     */
+    static long parseSize(String size) {
+        String s = size.toLowerCase(Locale.ROOT);
+        long unit = 1;
+        switch (s.charAt(s.length() - 1)) {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+            default:
+                return Long.parseLong(s);
+        }
+        return Long.parseLong(s.substring(0, s.length() - 1)) * unit;
+    }
+
+    /**
+     * Returns the {@code rank}th synthetic word: a pronounceable string of
+     * 1 to 6 syllables derived from the rank.
+     *
+     * @param rank
+     *            rank of the word
+     * @return the word
+     */
+    private static String word(int rank) {
+        final String consonants = "bcdfghjklmnprstvwz";
+        final String vowels = "aeiou";
+        StringBuilder sb = new StringBuilder();
+        int r = rank;
+        do {
+            sb.append(consonants.charAt(r % consonants.length()));
+            r /= consonants.length();
+            sb.append(vowels.charAt(r % vowels.length()));
+            r /= vowels.length();
+        } while (r > 0);
+        return sb.toString();
+    }
+
+    /**
+     * Writes a synthetic corpus of about {@code size} bytes to {@code file}.
+     * Words are drawn from a vocabulary of {@code VOCABULARY} words with Zipf
+     * distributed ranks, some of them capitalized, separated by spaces and
+     * occasional punctuation and line breaks.
+     *
+     * @param file
+     *            file to write
+     * @param size
+     *            approximate size in bytes
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void generateZipf(Path file, long size) throws IOException {
+        // cumulative distribution of ranks
+        double[] cdf = new double[VOCABULARY];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            sum += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = sum;
+        }
+        byte[][] words = new byte[VOCABULARY][];
+        byte[][] capitalized = new byte[VOCABULARY][];
+        for (int i = 0; i < VOCABULARY; i++) {
+            String w = word(i);
+            words[i] = w.getBytes(StandardCharsets.US_ASCII);
+            String cap = Character.toUpperCase(w.charAt(0)) + w.substring(1);
+            capitalized[i] = cap.getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[][] separators = new byte[SEPARATORS.length][];
+        for (int i = 0; i < SEPARATORS.length; i++) {
+            separators[i] = SEPARATORS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        SplittableRandom random = new SplittableRandom(size);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(tmp), 1 << 16)) {
+            long written = 0;
+            while (written < size) {
+                double u = random.nextDouble() * sum;
+                int lo = 0;
+                int hi = VOCABULARY - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cdf[mid] < u) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                byte[] w = random.nextInt(8) == 0 ? capitalized[lo] : words[lo];
+                byte[] sep = separators[random.nextInt(separators.length)];
+                out.write(w);
+                out.write(sep);
+                written += w.length + sep.length;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,113 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the whole pipeline of {@code TagCloud.main} for one corpus:
+ * counting, sorting, and writing the HTML and CSS with a
+ * {@code CloudRenderer} to a channel that discards them. Every operation consumes the whole corpus, so {@code BenchmarkMain}
+ * reports it in MB/s.
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int SMALLEST_FONT = 11;
+
+    /**
+     * Largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int LARGEST_FONT = 48;
+
+    /**
+     * Name of the corpus.
+     */
+    @Param({"alice", "lesmiz", "zipf-10m"})
+    public String corpus;
+
+    /**
+     * Tokenizer used to count the corpus.
+     */
+    @Param({"reader", "mapped"})
+    public String tokenizer;
+
+    /**
+     * Number of words in the cloud.
+     */
+    @Param({"100"})
+    public int n;
+
+    /**
+     * Path of the corpus.
+     */
+    private Path file;
+
+    /**
+     * Channel discarding its output.
+     */
+    private final WritableByteChannel channel = Channels
+            .newChannel(OutputStream.nullOutputStream());
+
+    /**
+     * Locates the corpus.
+     *
+     * @throws IOException
+     *             if a synthetic corpus cannot be generated
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.file = Corpora.path(this.corpus);
+    }
+
+    /**
+     * Builds the cloud of the corpus.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public void buildCloud() throws IOException {
+        Map<String, Integer> counts = OPS.generateWordMap(this.file,
+                this.tokenizer, 1);
+        List<Map.Entry<String, Integer>> words = OPS.sort(counts,
+                Math.min(this.n, counts.size()));
+        OPS.writeCloud(this.channel, this.corpus, words, SMALLEST_FONT,
+                LARGEST_FONT);
+        OPS.writeStylesheet(this.channel, SMALLEST_FONT, LARGEST_FONT);
+    }
+
+}
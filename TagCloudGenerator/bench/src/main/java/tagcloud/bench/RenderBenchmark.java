@@ -0,0 +1,188 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of rendering a cloud of the top {@code n} words of a corpus:
+ * {@code calculateFontSize} for every word, {@code populateCloud} and
+ * {@code generateCSS} through a {@code PrintWriter}, and the same output
+ * written by a {@code CloudRenderer}. Output is discarded.
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int SMALLEST_FONT = 11;
+
+    /**
+     * Largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int LARGEST_FONT = 48;
+
+    /**
+     * Name of the corpus.
+     */
+    @Param({"lesmiz"})
+    public String corpus;
+
+    /**
+     * Number of words in the cloud.
+     */
+    @Param({"100", "10000"})
+    public int n;
+
+    /**
+     * Top words of the corpus, sorted alphabetically.
+     */
+    private List<Map.Entry<String, Integer>> words;
+
+    /**
+     * Copy of the top words rendered by the next invocation.
+     */
+    private List<Map.Entry<String, Integer>> copy;
+
+    /**
+     * Smallest count of the top words.
+     */
+    private int minCounts;
+
+    /**
+     * Largest count of the top words.
+     */
+    private int maxCounts;
+
+    /**
+     * Writer discarding its output.
+     */
+    private final PrintWriter sink = new PrintWriter(
+            OutputStream.nullOutputStream());
+
+    /**
+     * Channel discarding its output.
+     */
+    private final WritableByteChannel channel = Channels
+            .newChannel(OutputStream.nullOutputStream());
+
+    /**
+     * Counts the corpus and selects its top words.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Map<String, Integer> counts = OPS
+                .generateWordMap(Corpora.path(this.corpus), "mapped", 1);
+        this.words = OPS.sort(counts, Math.min(this.n, counts.size()));
+        this.minCounts = Integer.MAX_VALUE;
+        this.maxCounts = Integer.MIN_VALUE;
+        for (Map.Entry<String, Integer> e : this.words) {
+            this.minCounts = Math.min(this.minCounts, e.getValue());
+            this.maxCounts = Math.max(this.maxCounts, e.getValue());
+        }
+    }
+
+    /**
+     * Copies the top words for the next invocation.
+     */
+    @Setup(Level.Invocation)
+    public void copyWords() {
+        this.copy = new ArrayList<>(this.words);
+    }
+
+    /**
+     * Calculates the font size of every top word.
+     *
+     * @return sum of the font sizes
+     */
+    @Benchmark
+    public int calculateFontSize() {
+        int sum = 0;
+        for (Map.Entry<String, Integer> e : this.words) {
+            sum += OPS.calculateFontSize(e.getKey(), e.getValue(),
+                    this.minCounts, this.maxCounts, SMALLEST_FONT,
+                    LARGEST_FONT);
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the HTML header and body of the cloud.
+     */
+    @Benchmark
+    public void populateCloud() {
+        OPS.writeHeader(this.corpus, this.copy.size(), this.sink);
+        OPS.populateCloud(this.corpus, this.copy, this.sink, SMALLEST_FONT,
+                LARGEST_FONT);
+        this.sink.flush();
+    }
+
+    /**
+     * Writes the stylesheet of the cloud.
+     */
+    @Benchmark
+    public void generateCSS() {
+        OPS.generateCSS(SMALLEST_FONT, LARGEST_FONT, this.sink);
+        this.sink.flush();
+    }
+
+    /**
+     * Writes the HTML of the cloud with a {@code CloudRenderer}.
+     *
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    @Benchmark
+    public void writeCloud() throws IOException {
+        OPS.writeCloud(this.channel, this.corpus, this.words, SMALLEST_FONT,
+                LARGEST_FONT);
+    }
+
+    /**
+     * Writes the stylesheet with a {@code CloudRenderer}.
+     *
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    @Benchmark
+    public void writeStylesheet() throws IOException {
+        OPS.writeStylesheet(this.channel, SMALLEST_FONT, LARGEST_FONT);
+    }
+
+}
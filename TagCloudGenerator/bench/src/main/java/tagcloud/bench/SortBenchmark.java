@@ -0,0 +1,94 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@code sort} selecting the top {@code n} words of the
+ * vocabulary of a corpus. {@code sort} clears its map, so every invocation
+ * works on a fresh copy made outside the measured time.
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Name of the corpus.
+     */
+    @Param({"lesmiz", "zipf-10m"})
+    public String corpus;
+
+    /**
+     * Number of words selected.
+     */
+    @Param({"100", "10000", "100000"})
+    public int n;
+
+    /**
+     * Word counts of the corpus.
+     */
+    private Map<String, Integer> counts;
+
+    /**
+     * Copy of the counts sorted by the next invocation.
+     */
+    private Map<String, Integer> copy;
+
+    /**
+     * Counts the corpus.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.counts = OPS.generateWordMap(Corpora.path(this.corpus), "mapped",
+                1);
+    }
+
+    /**
+     * Copies the counts for the next invocation.
+     */
+    @Setup(Level.Invocation)
+    public void copyCounts() {
+        this.copy = OPS.copy(this.counts);
+    }
+
+    /**
+     * Selects and sorts the top {@code n} words.
+     *
+     * @return the sorted top words
+     */
+    @Benchmark
+    public List<Map.Entry<String, Integer>> sort() {
+        return OPS.sort(this.copy, Math.min(this.n, this.counts.size()));
+    }
+
+}
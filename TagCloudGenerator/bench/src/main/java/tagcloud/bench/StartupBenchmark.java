@@ -0,0 +1,251 @@
+package tagcloud.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Measures the startup cost of generating one small cloud per JVM, as a job
+ * launching the generator once per document pays it. Each configuration is
+ * launched {@code --runs} times in a fresh JVM, and the time from launching
+ * the process to its "Finished writing" line (time to first output) and to
+ * its exit are reported as median and 90th percentile. Usage:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar tagcloud.bench.StartupBenchmark
+ *         [--runs &lt;N&gt;] [--build &lt;folder&gt;] [--input &lt;file&gt;]
+ * </pre>
+ *
+ * The build folder (default {@code ../build}) must hold the
+ * {@code tagcloud.jar}, {@code tagcloud.jsa} and {@code tagcloud} launcher
+ * written by {@code build-cli.sh}. The configurations are the interactive
+ * {@code TagCloud.main} fed through standard input, {@code TagCloudCli}
+ * without class-data sharing, with only the JDK's default archive, and with
+ * the AppCDS archive of the build, and the launcher, which adds its JIT and
+ * GC options to the archive.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class StartupBenchmark {
+
+    /**
+     * Default number of launches per configuration.
+     */
+    private static final int DEFAULT_RUNS = 20;
+
+    /**
+     * Prefix of the line printed once a cloud is written.
+     */
+    private static final String FINISHED = "Finished writing";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Times of one launch.
+     */
+    private static final class Times {
+
+        /**
+         * Milliseconds to the first "Finished writing" line.
+         */
+        private final double firstOutput;
+
+        /**
+         * Milliseconds to the exit of the process.
+         */
+        private final double exit;
+
+        /**
+         * Creates the times of a launch.
+         *
+         * @param firstOutput
+         *            milliseconds to the first output
+         * @param exit
+         *            milliseconds to the exit
+         */
+        Times(double firstOutput, double exit) {
+            this.firstOutput = firstOutput;
+            this.exit = exit;
+        }
+    }
+
+    /**
+     * Launches {@code command} in {@code dir}, writes {@code stdin} to it,
+     * and times it.
+     *
+     * @param command
+     *            command line
+     * @param dir
+     *            working folder
+     * @param stdin
+     *            standard input of the process
+     * @return times of the launch
+     * @throws IOException
+     *             if the process cannot be launched or fails
+     * @throws InterruptedException
+     *             if interrupted while waiting for the process
+     */
+    private static Times launch(List<String> command, Path dir, String stdin)
+            throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process p = pb.start();
+        try (OutputStream in = p.getOutputStream()) {
+            in.write(stdin.getBytes(StandardCharsets.UTF_8));
+        }
+        long firstOutput = -1;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(
+                p.getInputStream(), StandardCharsets.UTF_8))) {
+            String line = out.readLine();
+            while (line != null) {
+                if (firstOutput < 0 && line.contains(FINISHED)) {
+                    firstOutput = System.nanoTime();
+                }
+                line = out.readLine();
+            }
+        }
+        int status = p.waitFor();
+        long exit = System.nanoTime();
+        if (status != 0 || firstOutput < 0) {
+            throw new IOException("Failed (status " + status + "): "
+                    + String.join(" ", command));
+        }
+        return new Times((firstOutput - start) / 1e6, (exit - start) / 1e6);
+    }
+
+    /**
+     * Returns the {@code p}th percentile of sorted {@code values}.
+     *
+     * @param values
+     *            sorted values
+     * @param p
+     *            percentile, from 0 to 100
+     * @return the percentile
+     */
+    private static double percentile(double[] values, double p) {
+        int i = (int) Math.ceil(p / 100 * values.length) - 1;
+        return values[Math.max(0, Math.min(values.length - 1, i))];
+    }
+
+    /**
+     * Launches one configuration {@code runs} times, after one launch to warm
+     * the file system cache, and prints its times.
+     *
+     * @param label
+     *            name of the configuration
+     * @param command
+     *            command line, in which "RUN" is replaced by the index of the
+     *            launch
+     * @param stdin
+     *            standard input, in which "RUN" is replaced likewise
+     * @param dir
+     *            working folder
+     * @param runs
+     *            number of timed launches
+     * @throws IOException
+     *             if a launch fails
+     * @throws InterruptedException
+     *             if interrupted while waiting for a launch
+     */
+    private static void measure(String label, List<String> command,
+            String stdin, Path dir, int runs)
+            throws IOException, InterruptedException {
+        double[] firstOutput = new double[runs];
+        double[] exit = new double[runs];
+        for (int r = -1; r < runs; r++) {
+            String run = "run" + label.hashCode() + "_" + (r + 1);
+            List<String> cmd = new ArrayList<>();
+            for (String arg : command) {
+                cmd.add(arg.replace("RUN", run));
+            }
+            Times t = launch(cmd, dir, stdin.replace("RUN", run));
+            if (r >= 0) {
+                firstOutput[r] = t.firstOutput;
+                exit[r] = t.exit;
+            }
+        }
+        Arrays.sort(firstOutput);
+        Arrays.sort(exit);
+        System.out.println(String.format(Locale.ROOT,
+                "%-28s %10.1f %10.1f %10.1f %10.1f", label,
+                percentile(firstOutput, 50), percentile(firstOutput, 90),
+                percentile(exit, 50), percentile(exit, 90)));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws Exception
+     *             if a launch fails
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = DEFAULT_RUNS;
+        Path build = Paths.get("..", "build");
+        Path input = Paths.get("..", "data", "importance.txt");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--runs":
+                    runs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--build":
+                    build = Paths.get(args[i + 1]);
+                    break;
+                case "--input":
+                    input = Paths.get(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown option: " + args[i]);
+            }
+        }
+        Path jar = build.resolve("tagcloud.jar").toAbsolutePath();
+        Path archive = build.resolve("tagcloud.jsa").toAbsolutePath();
+        Path launcher = build.resolve("tagcloud").toAbsolutePath();
+        String file = input.toAbsolutePath().toString();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString();
+
+        // TagCloud.main writes output/<folder> under its working folder
+        Path dir = Files.createTempDirectory("tagcloud-startup");
+        System.out.println(String.format(Locale.ROOT,
+                "%-28s %10s %10s %10s %10s", "ms (" + runs + " runs)",
+                "first p50", "first p90", "exit p50", "exit p90"));
+        measure("TagCloud.main (stdin)", List.of(java, "-cp", jar.toString(),
+                "TagCloud"), file + "\nRUN\n100\n", dir, runs);
+        measure("TagCloudCli, no CDS", List.of(java, "-Xshare:off", "-jar",
+                jar.toString(), "out/RUN", "100", file), "", dir, runs);
+        measure("TagCloudCli, JDK CDS", List.of(java, "-jar", jar.toString(),
+                "out/RUN", "100", file), "", dir, runs);
+        measure("TagCloudCli, AppCDS", List.of(java,
+                "-XX:SharedArchiveFile=" + archive, "-jar", jar.toString(),
+                "out/RUN", "100", file), "", dir, runs);
+        measure("build/tagcloud (AppCDS, C1)", List.of(
+                launcher.toString(), "out/RUN", "100", file), "", dir, runs);
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operations of the tag cloud generator that are benchmarked. The generator
+ * lives in the default package, which code in a named package (as JMH
+ * requires for benchmarks) cannot refer to, so the benchmarks call it through
+ * this interface, implemented by {@code TagCloudBenchOps} in the default
+ * package.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public interface TagCloudOps {
+
+    /**
+     * Returns the implementation of this interface.
+     *
+     * @return the operations of the tag cloud generator
+     */
+    static TagCloudOps load() {
+        try {
+            return (TagCloudOps) Class.forName("TagCloudBenchOps")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("TagCloudBenchOps not found", e);
+        }
+    }
+
+    /**
+     * Word counts fed by many threads at once.
+     */
+    interface WordAccumulator {
+
+        /**
+         * Counts every word in {@code text}. May be called from any thread.
+         *
+         * @param text
+         *            text whose words are counted
+         */
+        void accept(CharSequence text);
+
+        /**
+         * Returns the {@code n} words with the highest counts so far, sorted
+         * alphabetically, without stopping the threads counting.
+         *
+         * @param n
+         *            number of words to select
+         * @return the selected words and their counts
+         */
+        List<Map.Entry<String, Integer>> snapshotTopN(int n);
+    }
+
+    /**
+     * Returns an empty accumulator of the given kind: "shards" (a
+     * {@code ConcurrentWordCounter}) or "adders" (a {@code ConcurrentHashMap}
+     * of {@code LongAdder}s, for comparison).
+     *
+     * @param kind
+     *            kind of accumulator
+     * @return the accumulator
+     */
+    WordAccumulator newAccumulator(String kind);
+
+    /**
+     * Index of the top words of counts that keep growing.
+     */
+    interface WordIndex {
+
+        /**
+         * Adds one occurrence of {@code word} and updates the index.
+         *
+         * @param word
+         *            word to count
+         */
+        void increment(String word);
+
+        /**
+         * Returns the indexed words and their counts, sorted alphabetically.
+         *
+         * @return the top words
+         */
+        List<Map.Entry<String, Integer>> top();
+    }
+
+    /**
+     * Returns a {@code TopWordIndex} of the {@code n} top words of a copy of
+     * {@code words}.
+     *
+     * @param words
+     *            map of words and counts, which is not changed
+     * @param n
+     *            number of words to index
+     * @return the index
+     */
+    WordIndex newTopWordIndex(Map<String, Integer> words, int n);
+
+    /**
+     * Splits {@code line} with {@code TagCloud.nextWordOrSeparator} and
+     * returns the number of words and separator strings in it.
+     *
+     * @param line
+     *            line to split
+     * @return number of words and separator strings
+     */
+    int scanWords(String line);
+
+    /**
+     * Counts the words of {@code file} with the given tokenizer: "reader",
+     * "mapped", "parallel" or "vector" (the mapped tokenizer with the Vector
+     * API splitter).
+     *
+     * @param file
+     *            input file
+     * @param tokenizer
+     *            tokenizer to use
+     * @param threads
+     *            number of threads of the "parallel" tokenizer
+     * @return map of words and counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    Map<String, Integer> generateWordMap(Path file, String tokenizer,
+            int threads) throws IOException;
+
+    /**
+     * Counts the n-grams of {@code file} read with the reader tokenizer, as
+     * main does when {@code tagcloud.ngram} is {@code n}, and returns the
+     * {@code top} most frequent as phrases.
+     *
+     * @param file
+     *            input file
+     * @param n
+     *            number of words of an n-gram
+     * @param top
+     *            number of phrases to return
+     * @return map of the top phrases and their counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    Map<String, Integer> countNGrams(Path file, int n, int top)
+            throws IOException;
+
+    /**
+     * Returns a copy of {@code words} of the map type generateWordMap returns.
+     *
+     * @param words
+     *            map to copy
+     * @return copy of words
+     */
+    Map<String, Integer> copy(Map<String, Integer> words);
+
+    /**
+     * Calls {@code TagCloud.sort}.
+     *
+     * @param words
+     *            map of words and counts, cleared by the call
+     * @param n
+     *            number of words to select
+     * @return the selected words, sorted alphabetically
+     */
+    List<Map.Entry<String, Integer>> sort(Map<String, Integer> words, int n);
+
+    /**
+     * Calls {@code TagCloud.calculateFontSize}.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     * @param minCounts
+     *            smallest count in the cloud
+     * @param maxCounts
+     *            largest count in the cloud
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @return the font size
+     */
+    int calculateFontSize(String word, int count, int minCounts,
+            int maxCounts, int minFontSize, int maxFontSize);
+
+    /**
+     * Calls {@code TagCloud.writeHeader}.
+     *
+     * @param name
+     *            name of the input file
+     * @param numWords
+     *            number of words in the cloud
+     * @param html
+     *            writer of the HTML output
+     */
+    void writeHeader(String name, int numWords, PrintWriter html);
+
+    /**
+     * Calls {@code TagCloud.populateCloud}.
+     *
+     * @param name
+     *            name of the input file
+     * @param sortedWords
+     *            words of the cloud, cleared by the call
+     * @param html
+     *            writer of the HTML output
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     */
+    void populateCloud(String name,
+            List<Map.Entry<String, Integer>> sortedWords, PrintWriter html,
+            int minFontSize, int maxFontSize);
+
+    /**
+     * Calls {@code TagCloud.generateCSS}.
+     *
+     * @param smallestFont
+     *            smallest font size
+     * @param largestFont
+     *            largest font size
+     * @param css
+     *            writer of the CSS output
+     */
+    void generateCSS(int smallestFont, int largestFont, PrintWriter css);
+
+    /**
+     * Writes the HTML of a cloud with {@code CloudRenderer.writeCloud}, as
+     * main does, using a renderer kept by the calling thread.
+     *
+     * @param channel
+     *            channel the HTML is written to
+     * @param name
+     *            name of the input file
+     * @param sortedWords
+     *            words of the cloud, sorted alphabetically
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    void writeCloud(WritableByteChannel channel, String name,
+            List<Map.Entry<String, Integer>> sortedWords, int minFontSize,
+            int maxFontSize) throws IOException;
+
+    /**
+     * Writes the stylesheet with a {@code CloudRenderer}, as main does, using
+     * a renderer kept by the calling thread.
+     *
+     * @param channel
+     *            channel the CSS is written to
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    void writeStylesheet(WritableByteChannel channel, int minFontSize,
+            int maxFontSize) throws IOException;
+
+}
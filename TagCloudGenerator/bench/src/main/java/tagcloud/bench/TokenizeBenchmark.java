@@ -0,0 +1,210 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of splitting a whole corpus into words: the
+ * {@code nextWordOrSeparator} loop over its lines held in memory,
+ * {@code generateWordMap} with each tokenizer (the mapped one with both the
+ * scalar and the Vector API splitter) and on a gzip copy of the corpus, and
+ * counting the bigrams and
+ * trigrams of the reader tokenizer's words. Every operation consumes the
+ * whole corpus, so {@code BenchmarkMain} reports them in MB/s.
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizeBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Name of the corpus.
+     */
+    @Param({"alice", "lesmiz", "zipf-10m"})
+    public String corpus;
+
+    /**
+     * Path of the corpus.
+     */
+    private Path file;
+
+    /**
+     * Path of the gzip copy of the corpus.
+     */
+    private Path gzipFile;
+
+    /**
+     * Lines of the corpus.
+     */
+    private List<String> lines;
+
+    /**
+     * Number of threads of the parallel tokenizer.
+     */
+    private int threads;
+
+    /**
+     * Locates the corpus and its gzip copy and reads its lines, and checks the
+     * Vector API splitter if it is available.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.file = Corpora.path(this.corpus);
+        this.gzipFile = Corpora.gzipPath(this.corpus);
+        this.lines = Files.readAllLines(this.file, Charset.defaultCharset());
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.checkVector();
+    }
+
+    /**
+     * Checks that the Vector API splitter counts the corpus exactly like the
+     * scalar one before it is timed, in the forks of
+     * {@link #generateWordMapVector()}, the only ones with the vector module.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    private void checkVector() throws IOException {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return;
+        }
+        if (!OPS.generateWordMap(this.file, "vector", 1)
+                .equals(OPS.generateWordMap(this.file, "mapped", 1))) {
+            throw new IllegalStateException(
+                    "Vector API splitter miscounts " + this.corpus);
+        }
+    }
+
+    /**
+     * Splits every line of the corpus with {@code nextWordOrSeparator}.
+     *
+     * @return number of words and separator strings
+     */
+    @Benchmark
+    public int nextWordOrSeparator() {
+        int n = 0;
+        for (String line : this.lines) {
+            n += OPS.scanWords(line);
+        }
+        return n;
+    }
+
+    /**
+     * Counts the corpus with the reader tokenizer.
+     *
+     * @return map of words and counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> generateWordMapReader() throws IOException {
+        return OPS.generateWordMap(this.file, "reader", 1);
+    }
+
+    /**
+     * Counts the bigrams of the corpus and selects the top 100.
+     *
+     * @return map of the top bigrams and their counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> countBigrams() throws IOException {
+        return OPS.countNGrams(this.file, 2, 100);
+    }
+
+    /**
+     * Counts the trigrams of the corpus and selects the top 100.
+     *
+     * @return map of the top trigrams and their counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> countTrigrams() throws IOException {
+        return OPS.countNGrams(this.file, 3, 100);
+    }
+
+    /**
+     * Counts the corpus with the memory-mapped tokenizer.
+     *
+     * @return map of words and counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> generateWordMapMapped() throws IOException {
+        return OPS.generateWordMap(this.file, "mapped", 1);
+    }
+
+    /**
+     * Counts the corpus with the memory-mapped tokenizer and the Vector API
+     * splitter.
+     *
+     * @return map of words and counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+    public Map<String, Integer> generateWordMapVector() throws IOException {
+        return OPS.generateWordMap(this.file, "vector", 1);
+    }
+
+    /**
+     * Counts the gzip copy of the corpus, decompressing and counting it in a
+     * pipeline with one decompressing and one counting thread per core.
+     *
+     * @return map of words and counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> generateWordMapGzip() throws IOException {
+        return OPS.generateWordMap(this.gzipFile, "parallel", this.threads);
+    }
+
+    /**
+     * Counts the corpus with the parallel tokenizer on every core.
+     *
+     * @return map of words and counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Map<String, Integer> generateWordMapParallel() throws IOException {
+        return OPS.generateWordMap(this.file, "parallel", this.threads);
+    }
+
+}
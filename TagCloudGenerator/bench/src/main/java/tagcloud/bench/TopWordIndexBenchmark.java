@@ -0,0 +1,142 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of keeping a cloud of the top {@code n} words of a corpus up to
+ * date with a {@code TopWordIndex}: counting one more word, drawn with the
+ * frequencies of the corpus, and reading the cloud, which {@code SortBenchmark}
+ * measures re-sorting the whole vocabulary for instead. Reads follow reads
+ * here, so they reuse the alphabetical order of the previous one.
+ *
+ * @author Austin Hendricks
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopWordIndexBenchmark {
+
+    /**
+     * Operations of the tag cloud generator.
+     */
+    private static final TagCloudOps OPS = TagCloudOps.load();
+
+    /**
+     * Number of words drawn in advance (must be a power of two).
+     */
+    private static final int DRAWS = 1 << 16;
+
+    /**
+     * Seed of the draws, so that every run counts the same words.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Name of the corpus.
+     */
+    @Param({"lesmiz", "zipf-10m"})
+    public String corpus;
+
+    /**
+     * Number of words in the cloud.
+     */
+    @Param({"100", "10000"})
+    public int n;
+
+    /**
+     * Index of the top words of the corpus.
+     */
+    private TagCloudOps.WordIndex index;
+
+    /**
+     * Words counted, in order, drawn with the frequencies of the corpus.
+     */
+    private String[] draws;
+
+    /**
+     * Position of the next word to count in {@code draws}.
+     */
+    private int next;
+
+    /**
+     * Counts the corpus, indexes its top words, and draws the words to count.
+     *
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Integer> counts = OPS
+                .generateWordMap(Corpora.path(this.corpus), "mapped", 1);
+        this.index = OPS.newTopWordIndex(counts,
+                Math.min(this.n, counts.size()));
+
+        String[] words = new String[counts.size()];
+        long[] cumulative = new long[counts.size()];
+        long total = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            total += e.getValue();
+            words[i] = e.getKey();
+            cumulative[i] = total;
+            i++;
+        }
+        Random random = new Random(SEED);
+        this.draws = new String[DRAWS];
+        for (int k = 0; k < DRAWS; k++) {
+            long x = (long) (random.nextDouble() * total);
+            int lo = 0;
+            int hi = cumulative.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] <= x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            this.draws[k] = words[lo];
+        }
+    }
+
+    /**
+     * Counts the next drawn word.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void increment() {
+        this.index.increment(this.draws[this.next]);
+        this.next = (this.next + 1) & (DRAWS - 1);
+    }
+
+    /**
+     * Reads the cloud.
+     *
+     * @return the top words, sorted alphabetically
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Map.Entry<String, Integer>> read() {
+        return this.index.top();
+    }
+
+}
@@ -0,0 +1,46 @@
+#!/bin/sh
+# Builds build/tagcloud.jar, an executable jar of TagCloudCli;
+# build/tagcloud.jsa, a class-data-sharing (AppCDS) archive of every class a
+# training run over data/ loads, so that later runs map those classes
+# instead of loading, verifying and linking them again; and build/tagcloud,
+# a launcher running the jar with that archive:
+#
+#   build/tagcloud output/docs 100 data/alice.txt
+#
+# The launcher also stops the JIT at C1 and uses the serial collector: a
+# run over one small document ends before C2 code would pay for its
+# compilation, and on a machine with few cores those compiler and GC
+# threads compete with the run itself. It also skips the hsperfdata file
+# that jps and jstat read, which nobody attaches to a run this short.
+#
+# The archive only matches the jar it was built from and the JDK that built
+# it; with any other the JVM ignores it (with a warning) and starts as usual.
+set -e
+cd "$(dirname "$0")"
+
+rm -rf build
+mkdir -p build/classes
+
+# inline string concatenation, so that the first concatenation does not
+# bootstrap StringConcatFactory at startup
+javac -XDstringConcat=inline --release 17 -encoding UTF-8 \
+    -d build/classes src/*.java
+jar --create --file build/tagcloud.jar --main-class TagCloudCli \
+    -C build/classes .
+
+JVM_OPTS="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:-UsePerfData"
+
+# training run over every bundled text that has words
+java $JVM_OPTS -XX:ArchiveClassesAtExit=build/tagcloud.jsa \
+    -jar build/tagcloud.jar \
+    build/training 100 $(find data -name '*.txt' -size +0 | sort) > /dev/null
+rm -rf build/training
+
+cat > build/tagcloud <<EOF
+#!/bin/sh
+dir="\$(dirname "\$0")"
+exec java $JVM_OPTS -XX:SharedArchiveFile="\$dir/tagcloud.jsa" \\
+    -jar "\$dir/tagcloud.jar" "\$@"
+EOF
+chmod +x build/tagcloud
+echo "Built build/tagcloud, build/tagcloud.jar and build/tagcloud.jsa"
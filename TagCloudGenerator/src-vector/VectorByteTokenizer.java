@@ -0,0 +1,197 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Splitter of encoded text into words that classifies a whole vector of bytes
+ * (32 with AVX2, 64 with AVX-512) per step with the Vector API. The
+ * separators of {@code TagCloud.SEPARATORS} are grouped into runs of
+ * consecutive byte values, and a byte is a separator iff its distance above
+ * the start of some run, as an unsigned byte, is at most the length of the
+ * run; the resulting lane mask is turned into a {@code long} whose bit
+ * transitions are the word boundaries. Bytes at the end of a range too short
+ * for a vector are classified one at a time.
+ *
+ * <p>
+ * {@code VectorMask.toLong} is not compiled to vector instructions by JDK 17
+ * and boxes every lane, so the mask is turned into bits with vector
+ * operations instead: each lane is given its bit within its group of eight,
+ * and multiplying each group, seen as a {@code long}, by 0x0101010101010101
+ * gathers the bits of the group in its top byte.
+ *
+ * <p>
+ * Separators are all ASCII, and in the charsets {@code ByteTokenizer}
+ * supports no byte of a non-ASCII character is below 0x80, so such bytes are
+ * always part of words here; folding and decoding them is left to
+ * {@code ByteWordTable} as for the scalar splitter.
+ *
+ * <p>
+ * This class lives apart from the other sources because it needs
+ * {@code --add-modules jdk.incubator.vector} to compile and to load:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -d bin src/*.java src-vector/*.java
+ * </pre>
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class VectorByteTokenizer implements ByteTokenizer.Splitter {
+
+    /**
+     * Vector shape used, at most 64 lanes so that a mask fits in a long.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED
+            .length() <= Long.SIZE ? ByteVector.SPECIES_PREFERRED
+                    : ByteVector.SPECIES_512;
+
+    /**
+     * Shape of {@code SPECIES} seen as lanes of longs.
+     */
+    private static final VectorSpecies<Long> LONG_SPECIES = SPECIES
+            .withLanes(long.class);
+
+    /**
+     * Bit of each lane within its group of eight lanes.
+     */
+    private static final ByteVector LANE_BITS;
+
+    /**
+     * Position of the bits of each group of eight lanes within a mask.
+     */
+    private static final LongVector GROUP_SHIFTS;
+
+    /**
+     * First byte value of each run of consecutive separators.
+     */
+    private static final byte[] RUN_STARTS;
+
+    /**
+     * Last minus first byte value of each run of consecutive separators.
+     */
+    private static final byte[] RUN_SPANS;
+
+    static {
+        byte[] laneBits = new byte[SPECIES.length()];
+        for (int i = 0; i < laneBits.length; i++) {
+            laneBits[i] = (byte) (1 << (i % Byte.SIZE));
+        }
+        LANE_BITS = ByteVector.fromArray(SPECIES, laneBits, 0);
+        long[] groupShifts = new long[LONG_SPECIES.length()];
+        for (int i = 0; i < groupShifts.length; i++) {
+            groupShifts[i] = i * Byte.SIZE;
+        }
+        GROUP_SHIFTS = LongVector.fromArray(LONG_SPECIES, groupShifts, 0);
+
+        boolean[] separator = new boolean[128];
+        for (int i = 0; i < TagCloud.SEPARATORS.length(); i++) {
+            separator[TagCloud.SEPARATORS.charAt(i)] = true;
+        }
+        List<int[]> runs = new ArrayList<>();
+        for (int c = 0; c < separator.length; c++) {
+            if (separator[c]) {
+                int start = c;
+                while (c + 1 < separator.length && separator[c + 1]) {
+                    c++;
+                }
+                runs.add(new int[] { start, c });
+            }
+        }
+        RUN_STARTS = new byte[runs.size()];
+        RUN_SPANS = new byte[runs.size()];
+        for (int r = 0; r < runs.size(); r++) {
+            RUN_STARTS[r] = (byte) runs.get(r)[0];
+            RUN_SPANS[r] = (byte) (runs.get(r)[1] - runs.get(r)[0]);
+        }
+    }
+
+    /**
+     * Returns the mask of the lanes of {@code v} holding separators.
+     *
+     * @param v
+     *            vector of bytes
+     * @return mask of the separator lanes
+     */
+    private static VectorMask<Byte> separators(ByteVector v) {
+        VectorMask<Byte> mask = v.sub(RUN_STARTS[0])
+                .compare(VectorOperators.UNSIGNED_LE, RUN_SPANS[0]);
+        for (int r = 1; r < RUN_STARTS.length; r++) {
+            mask = mask.or(v.sub(RUN_STARTS[r])
+                    .compare(VectorOperators.UNSIGNED_LE, RUN_SPANS[r]));
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the bits of {@code mask}, lane i as bit i, like
+     * {@code mask.toLong()}.
+     *
+     * @param mask
+     *            lane mask
+     * @return bits of mask
+     */
+    private static long toBits(VectorMask<Byte> mask) {
+        LongVector groups = ByteVector.zero(SPECIES)
+                .blend(LANE_BITS, mask).reinterpretAsLongs();
+        // the bits of a group are distinct, so their sum is their union
+        return groups.mul(0x0101010101010101L)
+                .lanewise(VectorOperators.LSHR, 56)
+                .lanewise(VectorOperators.LSHL, GROUP_SHIFTS)
+                .reduceLanes(VectorOperators.OR);
+    }
+
+    @Override
+    public void countWords(ByteBuffer buf, int from, int to,
+            ByteWordTable table) {
+        int lanes = SPECIES.length();
+        long allLanes = lanes == Long.SIZE ? -1L : (1L << lanes) - 1;
+        boolean inWord = false;
+        int wordStart = from;
+
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += lanes) {
+            long separators = toBits(separators(ByteVector
+                    .fromByteBuffer(SPECIES, buf, i, ByteOrder.nativeOrder())));
+            // alternately find the next word start and the next word end
+            int p = 0;
+            while (true) {
+                long next = inWord ? separators : ~separators & allLanes;
+                next &= -1L << p;
+                if (next == 0) {
+                    break;
+                }
+                p = Long.numberOfTrailingZeros(next);
+                if (inWord) {
+                    table.increment(buf, wordStart, i + p);
+                } else {
+                    wordStart = i + p;
+                }
+                inWord = !inWord;
+            }
+        }
+
+        // the rest is shorter than a vector
+        for (; i < to; i++) {
+            boolean separator = ByteTokenizer.isSeparator(buf.get(i));
+            if (inWord && separator) {
+                table.increment(buf, wordStart, i);
+                inWord = false;
+            } else if (!inWord && !separator) {
+                wordStart = i;
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            table.increment(buf, wordStart, to);
+        }
+    }
+
+}
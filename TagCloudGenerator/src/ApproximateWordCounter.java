@@ -0,0 +1,271 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate word counter for inputs too large to count exactly, using a
+ * fixed amount of memory. It keeps the Space-Saving summary of the most
+ * frequent words: at most {@code capacity} monitored words, each with an upper
+ * bound on its count and the amount by which that bound may overstate it.
+ * Every word is also added to a {@code CountMinSketch}; an unmonitored word
+ * only replaces the least frequent monitored word once the sketch estimates
+ * it to be more frequent, and reported counts are the smaller of the
+ * Space-Saving and sketch upper bounds.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class ApproximateWordCounter {
+
+    /**
+     * Number of rows of the sketch.
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * Approximate heap footprint of one monitored word (its counter, map node
+     * and key).
+     */
+    private static final int BYTES_PER_MONITORED_WORD = 160;
+
+    /**
+     * A monitored word.
+     */
+    private static final class Counter {
+
+        /**
+         * The word.
+         */
+        private final String word;
+
+        /**
+         * Upper bound on the word's count.
+         */
+        private long count;
+
+        /**
+         * Amount by which {@code count} may exceed the true count.
+         */
+        private long error;
+
+        /**
+         * Position of this counter in the heap.
+         */
+        private int pos;
+
+        /**
+         * Creates a counter.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            upper bound on its count
+         * @param error
+         *            amount by which count may exceed the true count
+         */
+        Counter(String word, long count, long error) {
+            this.word = word;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Sketch every word is added to.
+     */
+    private final CountMinSketch sketch;
+
+    /**
+     * Monitored words in a min-heap by count.
+     */
+    private final Counter[] heap;
+
+    /**
+     * Number of monitored words.
+     */
+    private int size = 0;
+
+    /**
+     * Monitored words by word.
+     */
+    private final Map<String, Counter> monitored;
+
+    /**
+     * Creates a counter using about {@code memoryBudget} bytes, split evenly
+     * between monitored words and the sketch.
+     *
+     * @param memoryBudget
+     *            memory budget in bytes
+     * @requires memoryBudget > 0
+     */
+    public ApproximateWordCounter(long memoryBudget) {
+        this((int) Math.min(Integer.MAX_VALUE / 2,
+                Math.max(16, memoryBudget / 2 / BYTES_PER_MONITORED_WORD)),
+                (int) Math.min(Integer.MAX_VALUE / SKETCH_DEPTH,
+                        Math.max(64, memoryBudget / 2
+                                / (Integer.BYTES * SKETCH_DEPTH))));
+    }
+
+    /**
+     * Creates a counter monitoring at most {@code capacity} words, backed by a
+     * sketch with rows of {@code sketchWidth} counters.
+     *
+     * @param capacity
+     *            maximum number of monitored words
+     * @param sketchWidth
+     *            number of counters per sketch row
+     * @requires capacity > 0 and sketchWidth > 0
+     */
+    public ApproximateWordCounter(int capacity, int sketchWidth) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.sketch = new CountMinSketch(SKETCH_DEPTH, sketchWidth);
+        this.heap = new Counter[capacity];
+        this.monitored = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Returns the total number of words added.
+     *
+     * @return total number of words added
+     */
+    public long total() {
+        return this.sketch.total();
+    }
+
+    /**
+     * Returns the number of monitored words.
+     *
+     * @return number of monitored words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds one occurrence of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @updates this
+     */
+    public void add(String word) {
+        int estimate = this.sketch.add(word);
+        Counter c = this.monitored.get(word);
+        if (c != null) {
+            c.count++;
+            this.siftDown(c.pos);
+        } else if (this.size < this.heap.length) {
+            // every word seen so far is monitored, so this count is exact
+            c = new Counter(word, 1, 0);
+            this.monitored.put(word, c);
+            this.heap[this.size] = c;
+            c.pos = this.size++;
+            this.siftUp(c.pos);
+        } else if (estimate > this.heap[0].count) {
+            // replace the least frequent word; the new word was seen at most
+            // min times before, since it was not monitored
+            Counter min = this.heap[0];
+            this.monitored.remove(min.word);
+            c = new Counter(word, min.count + 1, min.count);
+            this.monitored.put(word, c);
+            this.heap[0] = c;
+            c.pos = 0;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Moves the counter at {@code i} up the heap until its parent's count is
+     * not larger.
+     *
+     * @param i
+     *            position of the counter
+     */
+    private void siftUp(int i) {
+        Counter c = this.heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.heap[parent].count <= c.count) {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            this.heap[i].pos = i;
+            i = parent;
+        }
+        this.heap[i] = c;
+        c.pos = i;
+    }
+
+    /**
+     * Moves the counter at {@code i} down the heap until no child's count is
+     * smaller.
+     *
+     * @param i
+     *            position of the counter
+     */
+    private void siftDown(int i) {
+        Counter c = this.heap[i];
+        int half = this.size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < this.size
+                    && this.heap[right].count < this.heap[child].count) {
+                child = right;
+            }
+            if (this.heap[child].count >= c.count) {
+                break;
+            }
+            this.heap[i] = this.heap[child];
+            this.heap[i].pos = i;
+            i = child;
+        }
+        this.heap[i] = c;
+        c.pos = i;
+    }
+
+    /**
+     * Returns the reported count of a monitored word: the smaller of its
+     * Space-Saving and sketch upper bounds.
+     *
+     * @param c
+     *            counter of the word
+     * @return reported count
+     */
+    private long reportedCount(Counter c) {
+        return Math.min(c.count, this.sketch.estimate(c.word));
+    }
+
+    /**
+     * Returns the monitored words with their reported counts, which are never
+     * below the true counts.
+     *
+     * @return map of monitored words and their reported counts
+     */
+    public WordCounts toWordCounts() {
+        WordCounts wordCounts = new WordCounts();
+        for (int i = 0; i < this.size; i++) {
+            Counter c = this.heap[i];
+            wordCounts.add(c.word,
+                    (int) Math.min(Integer.MAX_VALUE, this.reportedCount(c)));
+        }
+        return wordCounts;
+    }
+
+    /**
+     * Returns, for every monitored word, the most its reported count can
+     * exceed its true count.
+     *
+     * @return map of monitored words and their error bounds
+     */
+    public Map<String, Integer> errors() {
+        Map<String, Integer> errors = new HashMap<>(this.size * 2);
+        for (int i = 0; i < this.size; i++) {
+            Counter c = this.heap[i];
+            long lowerBound = c.count - c.error;
+            errors.put(c.word, (int) Math.min(Integer.MAX_VALUE,
+                    this.reportedCount(c) - lowerBound));
+        }
+        return errors;
+    }
+
+}
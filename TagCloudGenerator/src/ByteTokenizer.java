@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tokenizer that splits encoded text into words directly on its bytes, using
+ * the same {@code TagCloud.SEPARATORS} as {@code TagCloud.nextWordOrSeparator}.
+ * Input files are read through memory-mapped windows, so no lines, substrings
+ * or separator strings are ever created.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class ByteTokenizer {
+
+    /**
+     * Size of the window of the file mapped at a time.
+     */
+    static final int WINDOW_SIZE = 1 << 26;
+
+    /**
+     * Lookup table telling, for every unsigned byte value, whether it is one of
+     * {@code TagCloud.SEPARATORS}.
+     */
+    private static final boolean[] IS_SEPARATOR = new boolean[256];
+
+    static {
+        for (int i = 0; i < TagCloud.SEPARATORS.length(); i++) {
+            IS_SEPARATOR[TagCloud.SEPARATORS.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * Splitter of byte ranges into words.
+     */
+    interface Splitter {
+
+        /**
+         * Counts every word in {@code buf[from, to)} into {@code table}.
+         *
+         * @param buf
+         *            buffer holding the encoded text
+         * @param from
+         *            index of the first byte to tokenize
+         * @param to
+         *            index one past the last byte to tokenize
+         * @param table
+         *            table the words are counted into
+         * @requires <pre>
+         *          0 <= from <= to <= buf.limit() and
+         *          buf[from, to) does not begin or end in the middle of a word
+         *          </pre>
+         * @updates table
+         */
+        void countWords(ByteBuffer buf, int from, int to,
+                ByteWordTable table);
+    }
+
+    /**
+     * Splitter testing one byte at a time.
+     */
+    static final Splitter SCALAR = ByteTokenizer::countWordsScalar;
+
+    /**
+     * Splitter used by {@link #countWords(ByteBuffer, int, int, ByteWordTable)}
+     * and everything built on it: the SIMD splitter if
+     * {@code TagCloud.SIMD_PROPERTY} asks for it and it is available,
+     * otherwise {@code SCALAR}.
+     */
+    private static final Splitter SPLITTER = Boolean
+            .getBoolean(TagCloud.SIMD_PROPERTY) ? simdOrScalar() : SCALAR;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ByteTokenizer() {
+    }
+
+    /**
+     * Returns the splitter classifying many bytes per instruction with the
+     * Vector API, or null if it is not available: the
+     * {@code VectorByteTokenizer} class is compiled separately, and needs
+     * {@code --add-modules jdk.incubator.vector} to load.
+     *
+     * @return the SIMD splitter, or null
+     */
+    static Splitter simd() {
+        try {
+            return (Splitter) Class.forName("VectorByteTokenizer")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the SIMD splitter, or {@code SCALAR} with a warning if it is not
+     * available.
+     *
+     * @return the splitter to use
+     */
+    private static Splitter simdOrScalar() {
+        Splitter simd = simd();
+        if (simd == null) {
+            System.err.println("SIMD tokenizer not available (compile "
+                    + "src-vector and run with --add-modules "
+                    + "jdk.incubator.vector); using the scalar tokenizer.");
+            return SCALAR;
+        }
+        return simd;
+    }
+
+    /**
+     * Returns whether the text of a file in the given {@code Charset} can be
+     * tokenized on its bytes: every separator must be encoded as its single
+     * ASCII byte, and no byte of a non-ASCII character may look like one.
+     *
+     * @param charset
+     *            charset the input is encoded in
+     * @return true iff byte tokenizing gives the same words as decoding first
+     */
+    static boolean supports(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.name().equals("windows-1252");
+    }
+
+    /**
+     * Returns whether the given byte is one of {@code TagCloud.SEPARATORS}.
+     *
+     * @param b
+     *            byte to classify
+     * @return true iff b is a separator
+     */
+    static boolean isSeparator(byte b) {
+        return IS_SEPARATOR[b & 0xFF];
+    }
+
+    /**
+     * Counts every word in {@code buf[from, to)} into {@code table} with the
+     * selected splitter.
+     *
+     * @param buf
+     *            buffer holding the encoded text
+     * @param from
+     *            index of the first byte to tokenize
+     * @param to
+     *            index one past the last byte to tokenize
+     * @param table
+     *            table the words are counted into
+     * @requires <pre>
+     *          0 <= from <= to <= buf.limit() and
+     *          buf[from, to) does not begin or end in the middle of a word
+     *          </pre>
+     * @updates table
+     */
+    static void countWords(ByteBuffer buf, int from, int to,
+            ByteWordTable table) {
+        SPLITTER.countWords(buf, from, to, table);
+    }
+
+    /**
+     * Counts every word in {@code buf[from, to)} into {@code table}, testing
+     * one byte at a time.
+     *
+     * @param buf
+     *            buffer holding the encoded text
+     * @param from
+     *            index of the first byte to tokenize
+     * @param to
+     *            index one past the last byte to tokenize
+     * @param table
+     *            table the words are counted into
+     * @requires <pre>
+     *          0 <= from <= to <= buf.limit() and
+     *          buf[from, to) does not begin or end in the middle of a word
+     *          </pre>
+     * @updates table
+     */
+    private static void countWordsScalar(ByteBuffer buf, int from, int to,
+            ByteWordTable table) {
+        int i = from;
+        while (i < to) {
+            // skip separator string
+            while (i < to && IS_SEPARATOR[buf.get(i) & 0xFF]) {
+                i++;
+            }
+            // find end position of word
+            int start = i;
+            while (i < to && !IS_SEPARATOR[buf.get(i) & 0xFF]) {
+                i++;
+            }
+            if (i > start) {
+                table.increment(buf, start, i);
+            }
+        }
+    }
+
+    /**
+     * Counts every word in bytes {@code [from, to)} of the given channel into
+     * {@code table}, mapping at most {@code WINDOW_SIZE} bytes at a time. Each
+     * window is cut after its last separator so that no word is split.
+     *
+     * @param channel
+     *            channel of the input file
+     * @param from
+     *            position of the first byte to tokenize
+     * @param to
+     *            position one past the last byte to tokenize
+     * @param table
+     *            table the words are counted into
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires <pre>
+     *          0 <= from <= to <= channel.size() and
+     *          [from, to) does not begin or end in the middle of a word
+     *          </pre>
+     * @updates table
+     */
+    static void countRange(FileChannel channel, long from, long to,
+            ByteWordTable table) throws IOException {
+        countRange(channel, from, to, table, SPLITTER);
+    }
+
+    /**
+     * Counts every word in bytes {@code [from, to)} of the given channel into
+     * {@code table} with the given splitter, as
+     * {@link #countRange(FileChannel, long, long, ByteWordTable)} does.
+     *
+     * @param channel
+     *            channel of the input file
+     * @param from
+     *            position of the first byte to tokenize
+     * @param to
+     *            position one past the last byte to tokenize
+     * @param table
+     *            table the words are counted into
+     * @param splitter
+     *            splitter of the mapped windows into words
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires <pre>
+     *          0 <= from <= to <= channel.size() and
+     *          [from, to) does not begin or end in the middle of a word
+     *          </pre>
+     * @updates table
+     */
+    static void countRange(FileChannel channel, long from, long to,
+            ByteWordTable table, Splitter splitter) throws IOException {
+        long pos = from;
+        long window = WINDOW_SIZE;
+        while (pos < to) {
+            long len = Math.min(window, to - pos);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                    pos, len);
+            int end = (int) len;
+            if (pos + len < to) {
+                // back up to the last separator so no word straddles windows
+                while (end > 0 && !IS_SEPARATOR[buf.get(end - 1) & 0xFF]) {
+                    end--;
+                }
+                if (end == 0) {
+                    // a single word fills the whole window -- map a bigger one
+                    if (window > Integer.MAX_VALUE / 2) {
+                        throw new IOException("Word at position " + pos
+                                + " is too long to be mapped");
+                    }
+                    window *= 2;
+                    continue;
+                }
+            }
+            splitter.countWords(buf, 0, end, table);
+            pos += end;
+        }
+    }
+
+    /**
+     * Returns a table with every word in the given file and its count, reading
+     * the file through memory-mapped windows.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the input file is encoded in
+     * @return table of all words read and their counts
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     * @requires supports(charset)
+     */
+    static ByteWordTable countFile(Path file, Charset charset)
+            throws IOException {
+        return countFile(file, charset, SPLITTER);
+    }
+
+    /**
+     * Returns a table with every word in the given file and its count, reading
+     * the file through memory-mapped windows split by {@code splitter}.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the input file is encoded in
+     * @param splitter
+     *            splitter of the mapped windows into words
+     * @return table of all words read and their counts
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     * @requires supports(charset)
+     */
+    static ByteWordTable countFile(Path file, Charset charset,
+            Splitter splitter) throws IOException {
+        ByteWordTable table = new ByteWordTable(charset);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            countRange(channel, 0, channel.size(), table, splitter);
+        }
+        return table;
+    }
+
+}
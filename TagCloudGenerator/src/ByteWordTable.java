@@ -0,0 +1,318 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Open-addressing table that counts words given as byte ranges of an encoded
+ * input, without creating a {@code String} for words that have already been
+ * seen. ASCII letters are case-folded into a reusable scratch array while the
+ * word is hashed; the {@code String} key of a word is only decoded (and
+ * lowercased exactly like {@code String.toLowerCase()}) when the word is
+ * inserted for the first time.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class ByteWordTable {
+
+    /**
+     * Initial number of hash slots (must be a power of two).
+     */
+    private static final int INITIAL_SLOTS = 1 << 12;
+
+    /**
+     * Lowercase form of every ASCII byte, or the byte itself when
+     * {@code String.toLowerCase()} does not map it to a single ASCII character
+     * in the default locale. Non-ASCII bytes are never folded here; they are
+     * left for the decoder and {@code String.toLowerCase()} to handle.
+     */
+    private static final byte[] FOLD = new byte[128];
+
+    static {
+        for (int c = 0; c < FOLD.length; c++) {
+            String lower = String.valueOf((char) c).toLowerCase();
+            if (lower.length() == 1 && lower.charAt(0) < 128) {
+                FOLD[c] = (byte) lower.charAt(0);
+            } else {
+                FOLD[c] = (byte) c;
+            }
+        }
+    }
+
+    /**
+     * Charset used to decode new keys.
+     */
+    private final Charset charset;
+
+    /**
+     * Folded bytes of every key, back to back, in insertion order.
+     */
+    private byte[] keyBytes = new byte[1 << 14];
+
+    /**
+     * Number of used bytes in {@code keyBytes}.
+     */
+    private int keyBytesUsed = 0;
+
+    /**
+     * Offset of each key in {@code keyBytes}, indexed by key id.
+     */
+    private int[] keyOffsets = new int[INITIAL_SLOTS / 2];
+
+    /**
+     * Length of each key in {@code keyBytes}, indexed by key id.
+     */
+    private int[] keyLengths = new int[INITIAL_SLOTS / 2];
+
+    /**
+     * Cached hash of each key, indexed by key id.
+     */
+    private int[] hashes = new int[INITIAL_SLOTS / 2];
+
+    /**
+     * Count of each key, indexed by key id.
+     */
+    private int[] counts = new int[INITIAL_SLOTS / 2];
+
+    /**
+     * Decoded, lowercased key of each id.
+     */
+    private String[] words = new String[INITIAL_SLOTS / 2];
+
+    /**
+     * Hash slots holding key id + 1, or 0 for an empty slot.
+     */
+    private int[] slots = new int[INITIAL_SLOTS];
+
+    /**
+     * Number of distinct keys.
+     */
+    private int size = 0;
+
+    /**
+     * Whether a key lowercases to a {@code String} of another length than
+     * its decoded form (e.g. one holding dotted capital I).
+     */
+    private boolean lengthChanging = false;
+
+    /**
+     * Scratch array the current word is folded into.
+     */
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Creates an empty table decoding keys with the given {@code Charset}.
+     *
+     * @param charset
+     *            charset the counted bytes are encoded in
+     * @requires charset is ASCII-compatible
+     */
+    ByteWordTable(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the number of distinct keys in this table.
+     *
+     * @return number of distinct keys
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether a key counted in this table lowercases to a
+     * {@code String} of another length than its decoded form.
+     * {@code TagCloud.countWords} then resumes scanning at a different place
+     * than this table split the input, so the two counts may differ.
+     *
+     * @return true iff a length-changing key was counted
+     */
+    boolean hasLengthChangingKey() {
+        return this.lengthChanging;
+    }
+
+    /**
+     * Counts one occurrence of the word held in {@code buf[from, to)}.
+     *
+     * @param buf
+     *            buffer holding the encoded word
+     * @param from
+     *            index of the first byte of the word
+     * @param to
+     *            index one past the last byte of the word
+     * @requires 0 <= from < to <= buf.limit()
+     * @ensures count of fold(buf[from, to)) is incremented by one
+     */
+    void increment(ByteBuffer buf, int from, int to) {
+        int len = to - from;
+        if (len > this.scratch.length) {
+            this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+        }
+        byte[] s = this.scratch;
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            byte b = buf.get(from + i);
+            if (b >= 0) {
+                b = FOLD[b];
+            }
+            s[i] = b;
+            h = 31 * h + b;
+        }
+        this.add(s, 0, len, h, 1, null);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the already folded key held in
+     * {@code key[off, off + len)} with hash {@code h}.
+     *
+     * @param key
+     *            array holding the folded key
+     * @param off
+     *            offset of the key in {@code key}
+     * @param len
+     *            length of the key
+     * @param h
+     *            hash of the key
+     * @param count
+     *            number of occurrences to add
+     * @param word
+     *            {@code String} form of the key, or null to decode it if the
+     *            key is new
+     */
+    private void add(byte[] key, int off, int len, int h, int count,
+            String word) {
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        int entry = this.slots[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == h && this.keyLengths[id] == len
+                    && Arrays.equals(this.keyBytes, this.keyOffsets[id],
+                            this.keyOffsets[id] + len, key, off, off + len)) {
+                this.counts[id] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.slots[slot];
+        }
+        this.insert(slot, key, off, len, h, count, word);
+    }
+
+    /**
+     * Inserts a new key into the given empty slot, materializing its
+     * {@code String} form.
+     *
+     * @param slot
+     *            empty slot to insert into
+     * @param key
+     *            array holding the folded key
+     * @param off
+     *            offset of the key in {@code key}
+     * @param len
+     *            length of the key
+     * @param h
+     *            hash of the key
+     * @param count
+     *            initial count of the key
+     * @param word
+     *            {@code String} form of the key, or null to decode it
+     */
+    private void insert(int slot, byte[] key, int off, int len, int h,
+            int count, String word) {
+        int id = this.size;
+        if (id == this.counts.length) {
+            int cap = id * 2;
+            this.keyOffsets = Arrays.copyOf(this.keyOffsets, cap);
+            this.keyLengths = Arrays.copyOf(this.keyLengths, cap);
+            this.hashes = Arrays.copyOf(this.hashes, cap);
+            this.counts = Arrays.copyOf(this.counts, cap);
+            this.words = Arrays.copyOf(this.words, cap);
+        }
+        if (this.keyBytesUsed + len > this.keyBytes.length) {
+            this.keyBytes = Arrays.copyOf(this.keyBytes,
+                    Math.max(this.keyBytesUsed + len, this.keyBytes.length * 2));
+        }
+        System.arraycopy(key, off, this.keyBytes, this.keyBytesUsed, len);
+        this.keyOffsets[id] = this.keyBytesUsed;
+        this.keyLengths[id] = len;
+        this.keyBytesUsed += len;
+        this.hashes[id] = h;
+        this.counts[id] = count;
+        if (word == null) {
+            String decoded = new String(key, off, len, this.charset);
+            word = decoded.toLowerCase();
+            if (word.length() != decoded.length()) {
+                this.lengthChanging = true;
+            }
+        }
+        this.words[id] = word;
+        this.slots[slot] = id + 1;
+        this.size++;
+
+        // keep the load factor at or below one half
+        if (this.size * 2 > this.slots.length) {
+            this.rehash();
+        }
+    }
+
+    /**
+     * Doubles the number of hash slots, reusing the cached hashes.
+     */
+    private void rehash() {
+        int[] grown = new int[this.slots.length * 2];
+        int mask = grown.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.hashes[id]) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = id + 1;
+        }
+        this.slots = grown;
+    }
+
+    /**
+     * Adds every key and count of {@code other} to this table.
+     *
+     * @param other
+     *            table whose counts are added
+     * @requires other uses the same charset as this
+     */
+    void addAll(ByteWordTable other) {
+        this.lengthChanging |= other.lengthChanging;
+        for (int id = 0; id < other.size; id++) {
+            this.add(other.keyBytes, other.keyOffsets[id], other.keyLengths[id],
+                    other.hashes[id], other.counts[id], other.words[id]);
+        }
+    }
+
+    /**
+     * Adds every word and count in this table to {@code wordCounts}. Distinct
+     * byte keys that lowercase to the same {@code String} (e.g. two cases of
+     * the same non-ASCII letter) have their counts summed.
+     *
+     * @param wordCounts
+     *            map the counts are added to
+     * @updates wordCounts
+     */
+    void addTo(WordCounts wordCounts) {
+        for (int id = 0; id < this.size; id++) {
+            wordCounts.add(this.words[id], this.counts[id]);
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash so that keys differing only in their last
+     * characters do not cluster in neighbouring slots.
+     *
+     * @param h
+     *            hash to spread
+     * @return spread hash
+     */
+    private static int mix(int h) {
+        int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+}
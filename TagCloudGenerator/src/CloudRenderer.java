@@ -0,0 +1,585 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders tag clouds straight to bytes. The output is byte for byte what
+ * {@code TagCloud.writeHeader}, {@code TagCloud.populateCloud} and
+ * {@code TagCloud.generateCSS} write through a {@code FileWriter} in the same
+ * charset, but:
+ * <ul>
+ * <li>the invariant parts of the HTML and the whole stylesheet are encoded
+ * once, when the renderer is created;</li>
+ * <li>the font size of every count is looked up in a table computed once per
+ * cloud, with integer arithmetic, instead of calling
+ * {@code calculateFontSize} per word;</li>
+ * <li>words and counts are encoded into a reusable direct buffer which is
+ * written to a {@code FileChannel} whenever it fills up.</li>
+ * </ul>
+ * A renderer is not thread-safe; use one per thread.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class CloudRenderer {
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Largest range of counts for which the font size of every count is
+     * tabulated; wider ranges compute it per word.
+     */
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+
+    /**
+     * Smallest font size.
+     */
+    private final int minFontSize;
+
+    /**
+     * Largest font size.
+     */
+    private final int maxFontSize;
+
+    /**
+     * Charset of the output.
+     */
+    private final Charset charset;
+
+    /**
+     * Whether words can be written a char per byte when they are ASCII.
+     */
+    private final boolean asciiCompatible;
+
+    /**
+     * Encoder of non-ASCII text, replacing what it cannot encode like a
+     * {@code FileWriter} does.
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Output buffer.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Scratch space for the digits of a number.
+     */
+    private final byte[] digits = new byte[11];
+
+    /**
+     * Channel the buffer is drained into.
+     */
+    private WritableByteChannel out;
+
+    /**
+     * Encoded stylesheet.
+     */
+    private final byte[] css;
+
+    /**
+     * Encoded invariant parts of the HTML, in the order they are written.
+     */
+    private final byte[] doctypeToTitle, titleToLink, linkToH2, h2ToCloud,
+            spanTitleToWord, wordToNextSpan, cloudToEnd, errorStart, errorEnd;
+
+    /**
+     * Encoded start of the span of a word of each font size, from
+     * minFontSize to maxFontSize.
+     */
+    private final byte[][] spanStart;
+
+    /**
+     * Creates a renderer of clouds with fonts from {@code minFontSize} to
+     * {@code maxFontSize}, encoded in {@code charset}.
+     *
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @param charset
+     *            charset of the output
+     * @requires 0 < minFontSize < maxFontSize
+     */
+    CloudRenderer(int minFontSize, int maxFontSize, Charset charset) {
+        assert 0 < minFontSize : "Violation of: 0 < minFontSize";
+        assert minFontSize < maxFontSize : "Violation of: minFontSize < maxFontSize";
+        this.minFontSize = minFontSize;
+        this.maxFontSize = maxFontSize;
+        this.charset = charset;
+        this.asciiCompatible = ByteTokenizer.supports(charset);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        StringWriter css = new StringWriter();
+        PrintWriter cssWriter = new PrintWriter(css);
+        TagCloud.generateCSS(minFontSize, maxFontSize, cssWriter);
+        cssWriter.flush();
+        this.css = css.toString().getBytes(charset);
+
+        String nl = System.lineSeparator();
+        this.doctypeToTitle = this.bytes("<!DOCTYPE html>" + nl
+                + "<html lang=\"en\">" + nl + "<head>" + nl + "<title>Top ");
+        this.titleToLink = this.bytes(".txt</title>" + nl + "<link href=\"");
+        this.linkToH2 = this.bytes(".css\" rel=\"stylesheet\" type=\"text/css\">"
+                + nl + "</head>" + nl + "<body>" + nl + "<h2>Top ");
+        this.h2ToCloud = this.bytes(".txt</h2>" + nl + "<hr>" + nl
+                + "<div class=\"cdiv\">" + nl + "<p class=\"cbox\">" + nl);
+        this.spanTitleToWord = this.bytes("\">");
+        this.wordToNextSpan = this.bytes("</span>" + nl);
+        this.cloudToEnd = this.bytes("</p>" + nl + "</div>" + nl + "</body>"
+                + nl + "</html>" + nl);
+        this.errorStart = this.bytes(" (error &le; ");
+        this.errorEnd = this.bytes(")");
+        this.spanStart = new byte[maxFontSize - minFontSize + 1][];
+        for (int size = minFontSize; size <= maxFontSize; size++) {
+            this.spanStart[size - minFontSize] = this.spanStartBytes(size);
+        }
+    }
+
+    /**
+     * Returns the smallest font size.
+     *
+     * @return smallest font size
+     */
+    int minFontSize() {
+        return this.minFontSize;
+    }
+
+    /**
+     * Returns the largest font size.
+     *
+     * @return largest font size
+     */
+    int maxFontSize() {
+        return this.maxFontSize;
+    }
+
+    /**
+     * Returns whether output in {@code charset} is rendered straight to bytes;
+     * in other charsets the renderer goes through
+     * {@code TagCloud.populateCloud} and encodes its output as a whole.
+     *
+     * @param charset
+     *            charset of the output
+     * @return true iff output in charset is rendered straight to bytes
+     */
+    static boolean supports(Charset charset) {
+        return ByteTokenizer.supports(charset);
+    }
+
+    /**
+     * Returns {@code s} encoded in the output charset.
+     *
+     * @param s
+     *            text to encode
+     * @return encoded text
+     */
+    private byte[] bytes(String s) {
+        return s.getBytes(this.charset);
+    }
+
+    /**
+     * Returns the encoded start of the span of a word of font size
+     * {@code size}, up to the count in its title.
+     *
+     * @param size
+     *            font size
+     * @return encoded start of the span
+     */
+    private byte[] spanStartBytes(int size) {
+        return this.bytes("<span style=\"cursor:default\" class=\"f" + size
+                + "\" title=\"count: ");
+    }
+
+    /**
+     * Font sizes of the counts of one cloud, matching
+     * {@code TagCloud.calculateFontSize} including the way
+     * {@code TagCloud.populateCloud} determines the smallest and largest
+     * counts.
+     */
+    private final class FontSizes {
+
+        /**
+         * Smallest count as determined by populateCloud.
+         */
+        private final int minCounts;
+
+        /**
+         * Largest count.
+         */
+        private final int maxCounts;
+
+        /**
+         * Whether sizes can be computed with integer arithmetic without
+         * overflow; otherwise calculateFontSize is called.
+         */
+        private final boolean exact;
+
+        /**
+         * Font size of every count from minCounts + 1 to maxCounts, or null if
+         * the range is too wide.
+         */
+        private final int[] table;
+
+        /**
+         * Computes the font sizes of the counts of {@code words}.
+         *
+         * @param words
+         *            words of the cloud and their counts
+         */
+        FontSizes(List<Map.Entry<String, Integer>> words) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (Map.Entry<String, Integer> entry : words) {
+                int val = entry.getValue();
+                // same as populateCloud, which only lowers the smallest count
+                // with values that do not raise the largest one
+                if (val > max) {
+                    max = val;
+                } else if (val < min) {
+                    min = val;
+                }
+            }
+            this.minCounts = min;
+            this.maxCounts = max;
+
+            int range = CloudRenderer.this.maxFontSize
+                    - CloudRenderer.this.minFontSize + 1;
+            long spread = (long) max - min;
+            this.exact = range > 0 && spread > 0
+                    && range * spread <= Integer.MAX_VALUE;
+            if (this.exact && spread <= MAX_TABLE_SIZE) {
+                this.table = new int[(int) spread];
+                for (int i = 0; i < this.table.length; i++) {
+                    this.table[i] = this.compute(min + 1 + i);
+                }
+            } else {
+                this.table = null;
+            }
+        }
+
+        /**
+         * Computes the font size of {@code count} with integer arithmetic.
+         *
+         * @param count
+         *            count of a word
+         * @return font size of the word
+         * @requires exact and minCounts < count <= maxCounts
+         */
+        private int compute(int count) {
+            int shift = CloudRenderer.this.minFontSize - 1;
+            int numerator = (CloudRenderer.this.maxFontSize - shift)
+                    * (count - this.minCounts);
+            int denominator = this.maxCounts - this.minCounts;
+            return -Math.floorDiv(-numerator, denominator) + shift;
+        }
+
+        /**
+         * Returns the font size of {@code word} with count {@code count}.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            its count
+         * @return font size of the word
+         */
+        int of(String word, int count) {
+            if (count <= this.minCounts) {
+                return CloudRenderer.this.minFontSize;
+            }
+            if (this.table != null) {
+                return this.table[count - this.minCounts - 1];
+            }
+            if (this.exact) {
+                return this.compute(count);
+            }
+            return TagCloud.calculateFontSize(word, count, this.minCounts,
+                    this.maxCounts, CloudRenderer.this.minFontSize,
+                    CloudRenderer.this.maxFontSize);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the output channel.
+     *
+     * @throws IOException
+     *             if the bytes cannot be written
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.out.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Appends {@code bytes} to the output.
+     *
+     * @param bytes
+     *            bytes to append
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private void put(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!this.buffer.hasRemaining()) {
+                this.drain();
+            }
+            int n = Math.min(bytes.length - offset, this.buffer.remaining());
+            this.buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    /**
+     * Appends the decimal digits of {@code n} to the output.
+     *
+     * @param n
+     *            number to append
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private void putInt(int n) throws IOException {
+        if (n < 0 || !this.asciiCompatible) {
+            this.putText(Integer.toString(n));
+            return;
+        }
+        int i = this.digits.length;
+        int rest = n;
+        do {
+            this.digits[--i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest > 0);
+        if (this.buffer.remaining() < this.digits.length - i) {
+            this.drain();
+        }
+        this.buffer.put(this.digits, i, this.digits.length - i);
+    }
+
+    /**
+     * Appends {@code text} to the output, encoded in the output charset.
+     *
+     * @param text
+     *            text to append
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private void putText(String text) throws IOException {
+        int length = text.length();
+        if (this.asciiCompatible && length <= this.buffer.capacity()) {
+            if (this.buffer.remaining() < length) {
+                this.drain();
+            }
+            int start = this.buffer.position();
+            int i = 0;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                this.buffer.put((byte) c);
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            // not ASCII -- encode the whole text instead
+            this.buffer.position(start);
+        }
+
+        CharBuffer chars = CharBuffer.wrap(text);
+        this.encoder.reset();
+        CoderResult result = this.encoder.encode(chars, this.buffer, true);
+        while (result.isOverflow()) {
+            this.drain();
+            result = this.encoder.encode(chars, this.buffer, true);
+        }
+        while (this.encoder.flush(this.buffer).isOverflow()) {
+            this.drain();
+        }
+    }
+
+    /**
+     * Writes the HTML of the cloud of {@code words} to {@code channel}: the
+     * header written by {@code TagCloud.writeHeader} followed by the body
+     * written by {@code TagCloud.populateCloud}.
+     *
+     * @param channel
+     *            channel the HTML is written to
+     * @param name
+     *            name of the input file without extension
+     * @param words
+     *            words of the cloud and their counts, sorted alphabetically
+     * @param errors
+     *            error bound of the count of each word, or null if the counts
+     *            are exact
+     * @throws IOException
+     *             if the channel cannot be written
+     * @requires |words| > 0
+     */
+    void writeCloud(WritableByteChannel channel, String name,
+            List<Map.Entry<String, Integer>> words,
+            Map<String, Integer> errors) throws IOException {
+        assert words.size() > 0 : "Violation of: |words| > 0";
+
+        if (!supports(this.charset)) {
+            // encode the document as a whole, as a FileWriter would
+            StringWriter html = new StringWriter();
+            PrintWriter htmlWriter = new PrintWriter(html);
+            TagCloud.writeHeader(name, words.size(), htmlWriter);
+            TagCloud.populateCloud(name, new ArrayList<>(words),
+                    htmlWriter, this.minFontSize, this.maxFontSize, errors);
+            htmlWriter.flush();
+            ByteBuffer bytes = ByteBuffer
+                    .wrap(html.toString().getBytes(this.charset));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            return;
+        }
+
+        this.out = channel;
+        this.buffer.clear();
+        try {
+            this.put(this.doctypeToTitle);
+            this.putInt(words.size());
+            this.putText(" words in " + name);
+            this.put(this.titleToLink);
+            this.putText(name);
+            this.put(this.linkToH2);
+            this.putInt(words.size());
+            this.putText(" words in " + name);
+            this.put(this.h2ToCloud);
+
+            FontSizes sizes = new FontSizes(words);
+            for (Map.Entry<String, Integer> entry : words) {
+                String word = entry.getKey();
+                int count = entry.getValue();
+                int size = sizes.of(word, count);
+                if (this.minFontSize <= size && size <= this.maxFontSize) {
+                    this.put(this.spanStart[size - this.minFontSize]);
+                } else {
+                    this.put(this.spanStartBytes(size));
+                }
+                this.putInt(count);
+                if (errors != null) {
+                    this.put(this.errorStart);
+                    this.putText(String.valueOf(errors.get(word)));
+                    this.put(this.errorEnd);
+                }
+                this.put(this.spanTitleToWord);
+                this.putText(word);
+                this.put(this.wordToNextSpan);
+            }
+
+            this.put(this.cloudToEnd);
+            this.drain();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * Writes the HTML of the cloud of {@code words} to {@code file}, replacing
+     * its contents.
+     *
+     * @param file
+     *            HTML file
+     * @param name
+     *            name of the input file without extension
+     * @param words
+     *            words of the cloud and their counts, sorted alphabetically
+     * @param errors
+     *            error bound of the count of each word, or null if the counts
+     *            are exact
+     * @throws IOException
+     *             if the file cannot be written
+     * @requires |words| > 0
+     */
+    void writeCloud(Path file, String name,
+            List<Map.Entry<String, Integer>> words,
+            Map<String, Integer> errors) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.writeCloud(channel, name, words, errors);
+        }
+    }
+
+    /**
+     * Returns the HTML of the cloud of {@code words}.
+     *
+     * @param name
+     *            name of the input file without extension
+     * @param words
+     *            words of the cloud and their counts, sorted alphabetically
+     * @param errors
+     *            error bound of the count of each word, or null if the counts
+     *            are exact
+     * @return encoded HTML of the cloud
+     * @requires |words| > 0
+     */
+    byte[] renderCloud(String name, List<Map.Entry<String, Integer>> words,
+            Map<String, Integer> errors) {
+        ByteArrayOutputStream html = new ByteArrayOutputStream(
+                words.size() * 64 + 512);
+        try {
+            this.writeCloud(Channels.newChannel(html), name, words, errors);
+        } catch (IOException e) {
+            throw new AssertionError("Writing to memory failed", e);
+        }
+        return html.toByteArray();
+    }
+
+    /**
+     * Returns the encoded stylesheet written by {@code TagCloud.generateCSS}.
+     * The array is shared and must not be modified.
+     *
+     * @return encoded stylesheet
+     */
+    byte[] stylesheet() {
+        return this.css;
+    }
+
+    /**
+     * Writes the stylesheet to {@code file}, replacing its contents.
+     *
+     * @param file
+     *            CSS file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    void writeStylesheet(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(this.css);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,710 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Counts the words of gzip or zip compressed files without decompressing them
+ * to disk. Counting is a pipeline: decompressing threads fill buffers taken
+ * from a fixed pool and queue them, and counting threads tokenize the queued
+ * buffers into their own {@code ByteWordTable}s and return them to the pool,
+ * so decompressing and counting overlap and the memory used is bounded.
+ *
+ * <p>
+ * The compressed input is split into units decompressed independently: each
+ * entry of a zip file, and groups of members of a gzip file in the BGZF
+ * layout written by {@code bgzip}, whose members record their compressed
+ * size. Any other gzip file is a single unit, since where its members begin
+ * is only known by inflating them. A counting thread counts the words of a
+ * buffer between its first and last separator, and keeps the bytes before and
+ * after them, which are stitched with those of the neighbouring buffers once
+ * everything is counted. The entries of a zip file are separate texts, so no
+ * word spans two of them.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class CompressedWordCounter {
+
+    /**
+     * Size of the buffers decompressed into.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of pooled buffers per counting thread.
+     */
+    private static final int BUFFERS_PER_WORKER = 4;
+
+    /**
+     * Compressed size of the BGZF members grouped into one unit.
+     */
+    private static final long UNIT_SIZE = 1 << 20;
+
+    /**
+     * Size of the buffer of a decompressing stream.
+     */
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompressedWordCounter() {
+    }
+
+    /**
+     * Compression formats recognized by their first bytes.
+     */
+    enum Format {
+        /**
+         * Not compressed.
+         */
+        PLAIN,
+
+        /**
+         * gzip (RFC 1952), possibly of several members.
+         */
+        GZIP,
+
+        /**
+         * zip archive.
+         */
+        ZIP
+    }
+
+    /**
+     * Returns the compression format of {@code file}, told by its magic
+     * number.
+     *
+     * @param file
+     *            path of the input file
+     * @return format of file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static Format format(Path file) throws IOException {
+        byte[] magic = new byte[4];
+        int n;
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(magic, 0, magic.length);
+        }
+        if (n >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+            return Format.GZIP;
+        }
+        if (n == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3
+                && magic[3] == 4) {
+            return Format.ZIP;
+        }
+        return Format.PLAIN;
+    }
+
+    /**
+     * Returns whether {@code file} is gzip or zip compressed.
+     *
+     * @param file
+     *            path of the input file
+     * @return whether file is compressed
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        return format(file) != Format.PLAIN;
+    }
+
+    /**
+     * Returns a reader of the decompressed text of {@code file}, read like
+     * {@code FileReader} reads a plain file. The entries of a zip file are
+     * read one after the other, separated by a line break.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the text is encoded in
+     * @return reader of the text of file
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    static BufferedReader newReader(Path file, Charset charset)
+            throws IOException {
+        switch (format(file)) {
+            case GZIP:
+                return new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(Files.newInputStream(file),
+                                STREAM_BUFFER_SIZE),
+                        charset));
+            case ZIP:
+                return new BufferedReader(new ZipEntriesReader(
+                        new ZipInputStream(Files.newInputStream(file)),
+                        charset));
+            default:
+                return new BufferedReader(
+                        new FileReader(file.toFile(), charset));
+        }
+    }
+
+    /**
+     * Reader of the entries of a zip stream, one after the other, each ended
+     * by a line break.
+     */
+    private static final class ZipEntriesReader extends Reader {
+
+        /**
+         * Stream of the zip file.
+         */
+        private final ZipInputStream zip;
+
+        /**
+         * Charset the entries are encoded in.
+         */
+        private final Charset charset;
+
+        /**
+         * Reader of the current entry, or null before the first entry and
+         * between entries.
+         */
+        private Reader entry = null;
+
+        /**
+         * Whether the last entry has been read.
+         */
+        private boolean done = false;
+
+        /**
+         * Creates a reader of the entries of {@code zip}.
+         *
+         * @param zip
+         *            stream of the zip file
+         * @param charset
+         *            charset the entries are encoded in
+         */
+        ZipEntriesReader(ZipInputStream zip, Charset charset) {
+            this.zip = zip;
+            this.charset = charset;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            while (!this.done) {
+                if (this.entry == null) {
+                    ZipEntry next = this.zip.getNextEntry();
+                    while (next != null && next.isDirectory()) {
+                        next = this.zip.getNextEntry();
+                    }
+                    if (next == null) {
+                        this.done = true;
+                        break;
+                    }
+                    // the entry reader must not close the zip stream
+                    this.entry = new InputStreamReader(
+                            new FilterInputStream(this.zip) {
+                                @Override
+                                public void close() {
+                                }
+                            }, this.charset);
+                }
+                int n = this.entry.read(cbuf, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+                this.entry = null;
+                if (len > 0) {
+                    cbuf[off] = '\n';
+                    return 1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.zip.close();
+        }
+    }
+
+    /**
+     * Decompressed bytes of a unit held in a pooled buffer.
+     */
+    private static final class Piece {
+
+        /**
+         * Index of the unit the bytes belong to.
+         */
+        private final int unit;
+
+        /**
+         * Index of the piece within its unit.
+         */
+        private final int index;
+
+        /**
+         * Buffer holding the bytes, from 0 to its limit.
+         */
+        private final ByteBuffer buf;
+
+        /**
+         * Whether this is the last piece of a text.
+         */
+        private final boolean endsText;
+
+        /**
+         * Creates a piece.
+         *
+         * @param unit
+         *            index of the unit
+         * @param index
+         *            index of the piece within its unit
+         * @param buf
+         *            buffer holding the bytes
+         * @param endsText
+         *            whether this is the last piece of a text
+         */
+        Piece(int unit, int index, ByteBuffer buf, boolean endsText) {
+            this.unit = unit;
+            this.index = index;
+            this.buf = buf;
+            this.endsText = endsText;
+        }
+    }
+
+    /**
+     * Bytes of a piece that were not counted by the counting thread.
+     */
+    private static final class Edges {
+
+        /**
+         * Index of the unit of the piece.
+         */
+        private final int unit;
+
+        /**
+         * Index of the piece within its unit.
+         */
+        private final int index;
+
+        /**
+         * Bytes before the first separator, or all bytes if there is none.
+         */
+        private final byte[] head;
+
+        /**
+         * Bytes after the last separator, or null if there is none.
+         */
+        private final byte[] tail;
+
+        /**
+         * Whether the piece is the last of a text.
+         */
+        private final boolean endsText;
+
+        /**
+         * Creates the edges of a piece.
+         *
+         * @param piece
+         *            the piece
+         * @param head
+         *            bytes before its first separator
+         * @param tail
+         *            bytes after its last separator, or null
+         */
+        Edges(Piece piece, byte[] head, byte[] tail) {
+            this.unit = piece.unit;
+            this.index = piece.index;
+            this.head = head;
+            this.tail = tail;
+            this.endsText = piece.endsText;
+        }
+    }
+
+    /**
+     * Source of the decompressed bytes of a unit.
+     */
+    @FunctionalInterface
+    private interface Unit {
+
+        /**
+         * Opens the decompressed bytes of the unit.
+         *
+         * @return stream of the decompressed bytes
+         * @throws IOException
+         *             if the unit cannot be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Returns the bounds of the units of the BGZF members of a gzip file, or
+     * null if some member does not record its size.
+     *
+     * @param channel
+     *            channel of the gzip file
+     * @return increasing unit boundaries, starting with 0 and ending with the
+     *         size of the file, or null
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long[] bgzfUnits(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer header = ByteBuffer.allocate(18)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long pos = 0;
+        long unitStart = 0;
+        while (pos < size) {
+            header.clear();
+            if (channel.read(header, pos) < header.capacity()) {
+                return null;
+            }
+            // FEXTRA with a single 6 byte "BC" subfield holding the size - 1
+            if (header.get(0) != (byte) 0x1f || header.get(1) != (byte) 0x8b
+                    || header.get(2) != 8 || (header.get(3) & 4) == 0
+                    || header.getShort(10) != 6 || header.get(12) != 'B'
+                    || header.get(13) != 'C' || header.getShort(14) != 2) {
+                return null;
+            }
+            pos += (header.getShort(16) & 0xFFFF) + 1;
+            if (pos - unitStart >= UNIT_SIZE) {
+                bounds.add(pos);
+                unitStart = pos;
+            }
+        }
+        if (pos != size) {
+            return null;
+        }
+        if (unitStart < size) {
+            bounds.add(size);
+        }
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses {@code unit} into buffers from {@code pool} and queues
+     * them on {@code full}.
+     *
+     * @param unit
+     *            the unit
+     * @param index
+     *            index of the unit
+     * @param endsText
+     *            whether the unit ends a text
+     * @param pool
+     *            free buffers
+     * @param full
+     *            queue of the filled buffers
+     * @throws IOException
+     *             if the unit cannot be decompressed
+     * @throws InterruptedException
+     *             if interrupted while waiting for a buffer
+     */
+    private static void decompress(Unit unit, int index, boolean endsText,
+            BlockingQueue<ByteBuffer> pool, BlockingQueue<Piece> full)
+            throws IOException, InterruptedException {
+        try (InputStream in = unit.open()) {
+            int piece = 0;
+            boolean eof = false;
+            while (!eof) {
+                ByteBuffer buf = pool.take();
+                int n = in.readNBytes(buf.array(), 0, buf.capacity());
+                eof = n < buf.capacity();
+                buf.limit(n);
+                full.put(new Piece(index, piece, buf, eof && endsText));
+                piece++;
+            }
+        }
+    }
+
+    /**
+     * Counts the queued pieces into {@code table}, returning their buffers
+     * to {@code pool}, until it takes {@code end}.
+     *
+     * @param full
+     *            queue of the filled buffers
+     * @param pool
+     *            free buffers
+     * @param end
+     *            piece marking the end of the queue
+     * @param table
+     *            table the words are counted into
+     * @return edges of the counted pieces
+     * @throws InterruptedException
+     *             if interrupted while waiting for a piece
+     */
+    private static List<Edges> count(BlockingQueue<Piece> full,
+            BlockingQueue<ByteBuffer> pool, Piece end, ByteWordTable table)
+            throws InterruptedException {
+        List<Edges> edges = new ArrayList<>();
+        Piece piece = full.take();
+        while (piece != end) {
+            ByteBuffer buf = piece.buf;
+            int length = buf.limit();
+            int first = 0;
+            while (first < length
+                    && !ByteTokenizer.isSeparator(buf.get(first))) {
+                first++;
+            }
+            int last = length - 1;
+            while (last > first
+                    && !ByteTokenizer.isSeparator(buf.get(last))) {
+                last--;
+            }
+            byte[] head = new byte[first];
+            buf.get(0, head);
+            byte[] tail = null;
+            if (first < length) {
+                ByteTokenizer.countWords(buf, first, last + 1, table);
+                tail = new byte[length - last - 1];
+                buf.get(last + 1, tail);
+            }
+            edges.add(new Edges(piece, head, tail));
+            buf.clear();
+            pool.put(buf);
+            piece = full.take();
+        }
+        return edges;
+    }
+
+    /**
+     * Counts {@code word}, if not empty, into {@code table}.
+     *
+     * @param word
+     *            bytes of a word, without separators
+     * @param table
+     *            table the word is counted into
+     * @updates table
+     */
+    private static void countWord(byte[] word, ByteWordTable table) {
+        if (word.length > 0) {
+            ByteTokenizer.countWords(ByteBuffer.wrap(word), 0, word.length,
+                    table);
+        }
+    }
+
+    /**
+     * Counts the words split between the pieces of {@code edges} into
+     * {@code table}.
+     *
+     * @param edges
+     *            edges of every piece
+     * @param table
+     *            table the words are counted into
+     * @updates table
+     */
+    private static void stitch(List<Edges> edges, ByteWordTable table) {
+        edges.sort(Comparator.<Edges> comparingInt(e -> e.unit)
+                .thenComparingInt(e -> e.index));
+        byte[] carry = new byte[0];
+        for (Edges e : edges) {
+            byte[] joined = new byte[carry.length + e.head.length];
+            System.arraycopy(carry, 0, joined, 0, carry.length);
+            System.arraycopy(e.head, 0, joined, carry.length, e.head.length);
+            if (e.tail == null) {
+                carry = joined;
+            } else {
+                countWord(joined, table);
+                carry = e.tail;
+            }
+            if (e.endsText) {
+                countWord(carry, table);
+                carry = new byte[0];
+            }
+        }
+    }
+
+    /**
+     * Decompresses the given units on {@code workers} threads while counting
+     * their words on {@code workers} others.
+     *
+     * @param units
+     *            units in order
+     * @param everyUnitEndsText
+     *            whether each unit is a text of its own, rather than all
+     *            units being one text
+     * @param charset
+     *            charset the text is encoded in
+     * @param workers
+     *            number of decompressing and of counting threads
+     * @return table of all words read and their counts
+     * @throws IOException
+     *             if a unit cannot be decompressed
+     */
+    private static ByteWordTable countUnits(List<Unit> units,
+            boolean everyUnitEndsText, Charset charset, int workers)
+            throws IOException {
+        int buffers = workers * BUFFERS_PER_WORKER;
+        BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            pool.add(ByteBuffer.allocate(BUFFER_SIZE));
+        }
+        // room for every buffer and every end marker, so puts never block
+        BlockingQueue<Piece> full = new ArrayBlockingQueue<>(
+                buffers + workers);
+        Piece end = new Piece(-1, -1, null, false);
+
+        ExecutorService decompressors = Executors.newFixedThreadPool(
+                Math.min(workers, Math.max(1, units.size())));
+        ExecutorService counters = Executors.newFixedThreadPool(workers);
+        List<ByteWordTable> tables = new ArrayList<>();
+        List<Future<List<Edges>>> counted = new ArrayList<>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                ByteWordTable table = new ByteWordTable(charset);
+                tables.add(table);
+                counted.add(counters.submit(() -> {
+                    try {
+                        return count(full, pool, end, table);
+                    } catch (RuntimeException | Error e) {
+                        // decompressors would wait forever for its buffers
+                        decompressors.shutdownNow();
+                        throw e;
+                    }
+                }));
+            }
+            List<Future<Void>> decompressed = new ArrayList<>();
+            for (int u = 0; u < units.size(); u++) {
+                Unit unit = units.get(u);
+                int index = u;
+                boolean endsText = everyUnitEndsText
+                        || u == units.size() - 1;
+                Callable<Void> task = () -> {
+                    decompress(unit, index, endsText, pool, full);
+                    return null;
+                };
+                decompressed.add(decompressors.submit(task));
+            }
+            try {
+                for (Future<Void> f : decompressed) {
+                    f.get();
+                }
+            } finally {
+                for (int w = 0; w < workers; w++) {
+                    full.add(end);
+                }
+            }
+
+            List<Edges> edges = new ArrayList<>();
+            for (Future<List<Edges>> f : counted) {
+                edges.addAll(f.get());
+            }
+            ByteWordTable table = tables.get(0);
+            for (int w = 1; w < workers; w++) {
+                table.addAll(tables.get(w));
+            }
+            stitch(edges, table);
+            return table;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while counting");
+        } finally {
+            decompressors.shutdownNow();
+            counters.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a table with every word in the given gzip or zip file and its
+     * count, decompressing on {@code workers} threads and counting on
+     * {@code workers} others. The counts are those of the text read by
+     * {@link #newReader(Path, Charset)}.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the text is encoded in
+     * @param workers
+     *            number of decompressing and of counting threads
+     * @return table of all words read and their counts
+     * @throws IOException
+     *             if the file cannot be read or decompressed
+     * @requires ByteTokenizer.supports(charset) and workers > 0 and
+     *           isCompressed(file)
+     */
+    static ByteWordTable countFile(Path file, Charset charset, int workers)
+            throws IOException {
+        assert workers > 0 : "Violation of: workers > 0";
+
+        if (format(file) == Format.ZIP) {
+            try (ZipFile zip = new ZipFile(file.toFile())) {
+                List<Unit> units = new ArrayList<>();
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        units.add(() -> zip.getInputStream(entry));
+                    }
+                }
+                return countUnits(units, true, charset, workers);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long[] bounds = bgzfUnits(channel);
+            List<Unit> units = new ArrayList<>();
+            if (bounds == null) {
+                units.add(() -> new GZIPInputStream(
+                        Files.newInputStream(file), STREAM_BUFFER_SIZE));
+            } else {
+                for (int u = 0; u + 1 < bounds.length; u++) {
+                    long from = bounds[u];
+                    int length = (int) (bounds[u + 1] - from);
+                    units.add(() -> {
+                        ByteBuffer compressed = ByteBuffer.allocate(length);
+                        int n = 0;
+                        while (compressed.hasRemaining() && n >= 0) {
+                            n = channel.read(compressed,
+                                    from + compressed.position());
+                        }
+                        return new GZIPInputStream(new ByteArrayInputStream(
+                                compressed.array(), 0, compressed.position()),
+                                STREAM_BUFFER_SIZE);
+                    });
+                }
+            }
+            return countUnits(units, false, charset, workers);
+        }
+    }
+
+}
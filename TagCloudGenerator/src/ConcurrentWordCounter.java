@@ -0,0 +1,182 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Word counts fed by many threads at once, e.g. one per socket or partition
+ * of a stream, and read while they are being fed.
+ *
+ * <p>
+ * Every thread counts into its own shard, a {@code WordCounts} only that
+ * thread writes to, so writers never contend with each other however many
+ * there are, and counting a word already in the shard allocates nothing. A
+ * shard is guarded by its own lock, which its writer takes once per
+ * {@link #accept(CharSequence)} and which is otherwise only taken by a
+ * snapshot while it copies that one shard. A snapshot thus never stops all
+ * writers: each writer waits at most for a few bulk array copies of its own
+ * shard, and the copies are merged after the locks are released.
+ *
+ * <p>
+ * A shard is kept for as long as the counter, even after its thread ends, so
+ * counters fed by short-lived threads should be fed from a pool.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class ConcurrentWordCounter {
+
+    /**
+     * Initial size of the buffer a shard copies the text it counts into.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1 << 10;
+
+    /**
+     * Counts of the words accepted by one thread.
+     */
+    private static final class Shard {
+
+        /**
+         * Counts of the words, guarded by this shard's lock.
+         */
+        private final WordCounts counts = new WordCounts();
+
+        /**
+         * Buffer the text being counted is copied into.
+         */
+        private char[] chars = new char[INITIAL_BUFFER_SIZE];
+    }
+
+    /**
+     * Shard of each thread.
+     */
+    private final ThreadLocal<Shard> shard = new ThreadLocal<>();
+
+    /**
+     * Every shard created, in order of creation.
+     */
+    private final List<Shard> shards = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the shard of the calling thread, creating it on first use.
+     *
+     * @return shard of the calling thread
+     */
+    private Shard shard() {
+        Shard s = this.shard.get();
+        if (s == null) {
+            s = new Shard();
+            this.shards.add(s);
+            this.shard.set(s);
+        }
+        return s;
+    }
+
+    /**
+     * Counts every word in {@code text}, converted to lowercase, as
+     * {@code TagCloud.generateWordMap} counts the words of an input file
+     * holding {@code text}. May be called from any thread.
+     *
+     * @param text
+     *            text whose words are counted
+     * @updates this
+     */
+    public void accept(CharSequence text) {
+        assert text != null : "Violation of: text is not null";
+
+        Shard s = this.shard();
+        synchronized (s) {
+            int len = text.length();
+            if (len > s.chars.length) {
+                s.chars = new char[Math.max(len, s.chars.length * 2)];
+            }
+            char[] chars = s.chars;
+            if (text instanceof String) {
+                ((String) text).getChars(0, len, chars, 0);
+            } else {
+                for (int i = 0; i < len; i++) {
+                    chars[i] = text.charAt(i);
+                }
+            }
+            countWords(chars, len, s.counts);
+        }
+    }
+
+    /**
+     * Counts every word in {@code chars[0, len)}, converted to lowercase, in
+     * {@code counts}, exactly as {@code TagCloud.countWords} counts them.
+     *
+     * @param chars
+     *            array holding the text
+     * @param len
+     *            length of the text
+     * @param counts
+     *            map the words are counted in
+     * @updates counts
+     */
+    private static void countWords(char[] chars, int len, WordCounts counts) {
+        int i = 0;
+        while (i < len) {
+            if (TagCloud.isSeparator(chars[i])) {
+                i++;
+            } else {
+                int start = i;
+                while (i < len && !TagCloud.isSeparator(chars[i])) {
+                    i++;
+                }
+                int id = counts.increment(chars, start, i);
+                // resume where the word would end if it were as long as its
+                // lowercase form, but never past the end of the line
+                int next = start + counts.word(id).length();
+                if (next < i) {
+                    i = next;
+                } else {
+                    while (i < next && i < len
+                            && !TagCloud.isLineTerminator(chars[i])) {
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the counts of every word accepted so far. Writers may keep
+     * accepting while the snapshot is taken; the snapshot holds, for every
+     * thread, the words that thread had accepted when its shard was copied.
+     *
+     * @return map of every word accepted and its count
+     */
+    public WordCounts snapshot() {
+        WordCounts merged = null;
+        for (Shard s : this.shards) {
+            WordCounts copy;
+            synchronized (s) {
+                copy = s.counts.copy();
+            }
+            if (merged == null) {
+                merged = copy;
+            } else {
+                merged.addAll(copy);
+            }
+        }
+        if (merged == null) {
+            merged = new WordCounts();
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the {@code n} words of {@link #snapshot()} that
+     * {@code TagCloud.sort} would select for a cloud, sorted alphabetically.
+     *
+     * @param n
+     *            number of words to select
+     * @return the selected words and their counts
+     * @requires n > 0
+     */
+    public List<Map.Entry<String, Integer>> snapshotTopN(int n) {
+        assert n > 0 : "Violation of: n > 0";
+        return TagCloud.topWords(this.snapshot(), n);
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Count-Min Sketch over words: a fixed {@code depth} x {@code width} table of
+ * counters that never underestimates the count of a word. With width w and
+ * depth d, after N words have been added the estimate of any word exceeds its
+ * true count by more than (e / w) * N with probability at most e^-d. Counters
+ * are updated conservatively (only the rows holding the current minimum are
+ * incremented), which tightens the estimates further.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class CountMinSketch {
+
+    /**
+     * Number of rows.
+     */
+    private final int depth;
+
+    /**
+     * Number of counters per row.
+     */
+    private final int width;
+
+    /**
+     * Counters, row after row.
+     */
+    private final int[] table;
+
+    /**
+     * Total number of words added.
+     */
+    private long total = 0;
+
+    /**
+     * Creates a sketch of {@code depth} rows of {@code width} counters.
+     *
+     * @param depth
+     *            number of rows
+     * @param width
+     *            number of counters per row
+     * @requires depth > 0 and width > 0
+     */
+    CountMinSketch(int depth, int width) {
+        assert depth > 0 : "Violation of: depth > 0";
+        assert width > 0 : "Violation of: width > 0";
+        this.depth = depth;
+        this.width = width;
+        this.table = new int[depth * width];
+    }
+
+    /**
+     * Returns the total number of words added.
+     *
+     * @return total number of words added
+     */
+    long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns a 64-bit hash of {@code word}.
+     *
+     * @param word
+     *            word to hash
+     * @return hash of word
+     */
+    private static long hash64(String word) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001B3L;
+        }
+        // final avalanche so that every bit depends on every character
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the index in {@code table} of the counter of a word in
+     * {@code row}, derived from the two halves of the word's hash.
+     *
+     * @param h
+     *            64-bit hash of the word
+     * @param row
+     *            row of the counter
+     * @return index of the counter
+     */
+    private int index(long h, int row) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        return row * this.width + Math.floorMod(h1 + row * h2, this.width);
+    }
+
+    /**
+     * Adds one occurrence of {@code word} and returns its new estimate.
+     *
+     * @param word
+     *            the word
+     * @return estimated count of word, including this occurrence
+     * @updates this
+     */
+    int add(String word) {
+        long h = hash64(word);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            min = Math.min(min, this.table[this.index(h, row)]);
+        }
+        if (min < Integer.MAX_VALUE) {
+            // conservative update: only raise the counters at the minimum
+            for (int row = 0; row < this.depth; row++) {
+                int i = this.index(h, row);
+                if (this.table[i] == min) {
+                    this.table[i] = min + 1;
+                }
+            }
+            min++;
+        }
+        this.total++;
+        return min;
+    }
+
+    /**
+     * Returns the estimated count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return estimated count of word, never below its true count
+     */
+    int estimate(String word) {
+        long h = hash64(word);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            min = Math.min(min, this.table[this.index(h, row)]);
+        }
+        return min;
+    }
+
+}
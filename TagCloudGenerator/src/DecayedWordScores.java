@@ -0,0 +1,257 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Exponentially decayed word scores, for clouds of what is trending in a
+ * stream rather than of all-time counts. Every occurrence of a word adds 1 to
+ * its score, and every score halves each {@code halfLife} milliseconds.
+ *
+ * <p>
+ * Decay is lazy: scores are stored relative to a landmark time L, so an
+ * occurrence at time t adds 2^((t - L) / halfLife) to the stored score of its
+ * word, and the score at time t is the stored score divided by that same
+ * weight. Adding an occurrence is thus O(1) and never touches other words.
+ * Since all stored scores are divided by the same weight, their order is the
+ * order of the current scores. When the weight grows too large the stored
+ * scores are rescaled and the landmark moved to the present.
+ *
+ * <p>
+ * Memory is bounded by evicting the words whose score has dropped below
+ * {@code threshold}, whenever the number of words doubles since the last
+ * eviction. A word with a score of at least {@code threshold} needs
+ * occurrences in the last few half-lives, so at most about (occurrences per
+ * half-life) / {@code threshold} words are kept.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class DecayedWordScores {
+
+    /**
+     * Weight past which the stored scores are rescaled.
+     */
+    private static final double MAX_WEIGHT = 1e100;
+
+    /**
+     * Number of words below which nothing is evicted.
+     */
+    private static final int MIN_EVICTION_SIZE = 1 << 10;
+
+    /**
+     * Stored score of a word, mutable so that adding to it does not allocate.
+     */
+    private static final class Score {
+
+        /**
+         * Score relative to the landmark.
+         */
+        private double value;
+    }
+
+    /**
+     * Decay rate, in natural log units per millisecond.
+     */
+    private final double rate;
+
+    /**
+     * Score below which a word is evicted.
+     */
+    private final double threshold;
+
+    /**
+     * Stored score of each word.
+     */
+    private final Map<String, Score> scores = new HashMap<>();
+
+    /**
+     * Time the stored scores are relative to, in milliseconds.
+     */
+    private long landmark;
+
+    /**
+     * Current time, in milliseconds.
+     */
+    private long now;
+
+    /**
+     * Weight of an occurrence at the current time, e^(rate * (now -
+     * landmark)).
+     */
+    private double weight = 1;
+
+    /**
+     * Number of words past which words are next evicted.
+     */
+    private int evictionSize = MIN_EVICTION_SIZE;
+
+    /**
+     * Creates empty scores which halve every {@code halfLife} milliseconds,
+     * starting at time {@code start}.
+     *
+     * @param halfLife
+     *            half-life of a score, in milliseconds
+     * @param threshold
+     *            score below which a word may be evicted
+     * @param start
+     *            current time, in milliseconds
+     * @requires halfLife > 0 and threshold >= 0
+     */
+    public DecayedWordScores(double halfLife, double threshold, long start) {
+        assert halfLife > 0 : "Violation of: halfLife > 0";
+        assert threshold >= 0 : "Violation of: threshold >= 0";
+        this.rate = Math.log(2) / halfLife;
+        this.threshold = threshold;
+        this.landmark = start;
+        this.now = start;
+    }
+
+    /**
+     * Returns the number of words kept.
+     *
+     * @return number of words
+     */
+    public int size() {
+        return this.scores.size();
+    }
+
+    /**
+     * Moves the current time to {@code time}; an earlier time is ignored, so
+     * that a clock stepping back never makes scores grow.
+     *
+     * @param time
+     *            current time, in milliseconds
+     * @updates this
+     */
+    public void advance(long time) {
+        if (time <= this.now) {
+            return;
+        }
+        this.now = time;
+        this.weight = Math.exp(this.rate * (this.now - this.landmark));
+        if (this.weight > MAX_WEIGHT) {
+            this.rescale();
+        }
+    }
+
+    /**
+     * Adds one occurrence of {@code word} at the current time.
+     *
+     * @param word
+     *            the word
+     * @updates this
+     */
+    public void add(String word) {
+        Score score = this.scores.get(word);
+        if (score == null) {
+            score = new Score();
+            this.scores.put(word, score);
+        }
+        score.value += this.weight;
+        if (this.scores.size() > this.evictionSize) {
+            this.evict();
+        }
+    }
+
+    /**
+     * Returns the score of {@code word} at the current time, or 0 if it is
+     * not kept.
+     *
+     * @param word
+     *            the word
+     * @return score of word
+     */
+    public double score(String word) {
+        Score score = this.scores.get(word);
+        return score == null ? 0 : score.value / this.weight;
+    }
+
+    /**
+     * Divides every stored score by the current weight and moves the
+     * landmark to the current time.
+     */
+    private void rescale() {
+        for (Score score : this.scores.values()) {
+            score.value /= this.weight;
+        }
+        this.landmark = this.now;
+        this.weight = 1;
+    }
+
+    /**
+     * Removes the words whose current score is below {@code threshold}.
+     */
+    private void evict() {
+        double cutoff = this.threshold * this.weight;
+        Iterator<Score> it = this.scores.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().value < cutoff) {
+                it.remove();
+            }
+        }
+        this.evictionSize = Math.max(MIN_EVICTION_SIZE,
+                2 * this.scores.size());
+    }
+
+    /**
+     * Returns whether (word1, value1) ranks below (word2, value2): by
+     * increasing score, then in alphabetical order as in
+     * {@code TopWordSelector}.
+     *
+     * @param word1
+     *            first word
+     * @param value1
+     *            stored score of the first word
+     * @param word2
+     *            second word
+     * @param value2
+     *            stored score of the second word
+     * @return true iff the first pair ranks lower
+     */
+    private static boolean ranksBelow(String word1, double value1,
+            String word2, double value2) {
+        if (value1 != value2) {
+            return value1 < value2;
+        }
+        return word1.compareTo(word2) < 0;
+    }
+
+    /**
+     * Returns the {@code n} words with the highest current scores, sorted
+     * alphabetically, with their current scores.
+     *
+     * @param n
+     *            number of words to select
+     * @return the selected words and their scores
+     * @requires n > 0
+     */
+    public List<Map.Entry<String, Double>> top(int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        PriorityQueue<Map.Entry<String, Score>> heap = new PriorityQueue<>(n,
+                (e1, e2) -> ranksBelow(e1.getKey(), e1.getValue().value,
+                        e2.getKey(), e2.getValue().value) ? -1 : 1);
+        for (Map.Entry<String, Score> e : this.scores.entrySet()) {
+            if (heap.size() < n) {
+                heap.add(e);
+            } else if (ranksBelow(heap.peek().getKey(),
+                    heap.peek().getValue().value, e.getKey(),
+                    e.getValue().value)) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        List<Map.Entry<String, Double>> top = new ArrayList<>(heap.size());
+        for (Map.Entry<String, Score> e : heap) {
+            top.add(new AbstractMap.SimpleEntry<>(e.getKey(),
+                    e.getValue().value / this.weight));
+        }
+        top.sort(Map.Entry.comparingByKey());
+        return top;
+    }
+
+}
@@ -0,0 +1,493 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Exact word counter for inputs whose vocabulary does not fit in memory.
+ * Words are counted in a {@code WordCounts} until its estimated footprint
+ * exceeds the memory budget; it is then written to a temporary "run" file,
+ * sorted alphabetically, and cleared. Selecting the top words merges the runs
+ * and the words still in memory, summing the counts of each word, and feeds
+ * the merged counts to a {@code TopWordSelector}, so the full vocabulary is
+ * never in memory at once. The selected words are the same as
+ * {@code TagCloud.sort} selects from an exact count.
+ *
+ * <p>
+ * A run is a sequence of entries until the end of the file, each a word
+ * front-coded against the previous one (see
+ * {@code WordCountSnapshot.writeWord}) followed by its count as a
+ * variable-length integer. At most {@code MAX_FAN_IN} runs are merged at
+ * once; when there are more, groups of them are first merged into longer
+ * runs.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class ExternalWordCounter implements Closeable {
+
+    /**
+     * Largest number of runs merged at once.
+     */
+    static final int MAX_FAN_IN = 64;
+
+    /**
+     * Size of the buffer of each run file.
+     */
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Folder of the run files.
+     */
+    private final Path spillFolder;
+
+    /**
+     * Memory budget of the in-memory counts, in bytes.
+     */
+    private final long memoryBudget;
+
+    /**
+     * Counts of the words since the last spill.
+     */
+    private final WordCounts counts = new WordCounts();
+
+    /**
+     * Estimated footprint of {@code counts}.
+     */
+    private long footprint = 0;
+
+    /**
+     * Largest number of words held in memory at once.
+     */
+    private int peakSize = 0;
+
+    /**
+     * Run files not merged yet.
+     */
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * Number of runs spilled from memory.
+     */
+    private int spills = 0;
+
+    /**
+     * Total number of words added.
+     */
+    private long total = 0;
+
+    /**
+     * Number of distinct words, known once the runs are merged.
+     */
+    private long distinct = -1;
+
+    /**
+     * Reader of the entries of a run, in order.
+     */
+    private static final class RunReader implements Closeable {
+
+        /**
+         * Stream of the run.
+         */
+        private final InputStream in;
+
+        /**
+         * Chars of the current word.
+         */
+        private char[] chars = new char[64];
+
+        /**
+         * Length of the current word.
+         */
+        private int length = 0;
+
+        /**
+         * Current word, or null if the run is exhausted.
+         */
+        private String word;
+
+        /**
+         * Count of the current word.
+         */
+        private long count;
+
+        /**
+         * Opens {@code run} and reads its first entry.
+         *
+         * @param run
+         *            run file
+         * @throws IOException
+         *             if the run cannot be read
+         */
+        RunReader(Path run) throws IOException {
+            this.in = new BufferedInputStream(Files.newInputStream(run),
+                    RUN_BUFFER_SIZE);
+            this.advance();
+        }
+
+        /**
+         * Reads the next entry, setting {@code word} to null at the end of the
+         * run.
+         *
+         * @throws IOException
+         *             if the run cannot be read or is malformed
+         */
+        void advance() throws IOException {
+            this.in.mark(1);
+            if (this.in.read() < 0) {
+                this.word = null;
+                return;
+            }
+            this.in.reset();
+            int shared = WordCountSnapshot.readVarInt(this.in);
+            int suffix = WordCountSnapshot.readVarInt(this.in);
+            if (shared > this.length || suffix > Integer.MAX_VALUE - shared) {
+                throw new IOException("Malformed front-coded word");
+            }
+            this.length = shared + suffix;
+            if (this.length > this.chars.length) {
+                this.chars = Arrays.copyOf(this.chars,
+                        Math.max(this.length, this.chars.length * 2));
+            }
+            for (int i = shared; i < this.length; i++) {
+                this.chars[i] = (char) WordCountSnapshot.readVarInt(this.in);
+            }
+            this.word = new String(this.chars, 0, this.length);
+            this.count = WordCountSnapshot.readVarLong(this.in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Writer of the entries of a run, which must be given in alphabetical
+     * order.
+     */
+    private static final class RunWriter implements Closeable {
+
+        /**
+         * Stream of the run.
+         */
+        private final OutputStream out;
+
+        /**
+         * Previously written word.
+         */
+        private String prev = "";
+
+        /**
+         * Creates {@code run}.
+         *
+         * @param run
+         *            run file
+         * @throws IOException
+         *             if the run cannot be created
+         */
+        RunWriter(Path run) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(run),
+                    RUN_BUFFER_SIZE);
+        }
+
+        /**
+         * Writes an entry.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            its count
+         * @throws IOException
+         *             if the run cannot be written
+         */
+        void write(String word, long count) throws IOException {
+            WordCountSnapshot.writeWord(this.out, this.prev, word);
+            WordCountSnapshot.writeVarLong(this.out, count);
+            this.prev = word;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Receiver of merged entries.
+     */
+    @FunctionalInterface
+    private interface EntrySink {
+
+        /**
+         * Receives the total count of a word.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            its total count
+         * @throws IOException
+         *             if the entry cannot be written
+         */
+        void accept(String word, long count) throws IOException;
+    }
+
+    /**
+     * Creates a counter keeping about {@code memoryBudget} bytes of counts in
+     * memory and spilling them into {@code spillFolder}.
+     *
+     * @param memoryBudget
+     *            memory budget in bytes
+     * @param spillFolder
+     *            folder of the run files
+     * @requires memoryBudget > 0
+     */
+    public ExternalWordCounter(long memoryBudget, Path spillFolder) {
+        assert memoryBudget > 0 : "Violation of: memoryBudget > 0";
+        this.memoryBudget = memoryBudget;
+        this.spillFolder = spillFolder;
+    }
+
+    /**
+     * Returns the total number of words added.
+     *
+     * @return total number of words added
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of runs spilled so far.
+     *
+     * @return number of runs spilled
+     */
+    public int spills() {
+        return this.spills;
+    }
+
+    /**
+     * Returns the largest number of words held in memory at once.
+     *
+     * @return peak number of words in memory
+     */
+    public int peakSize() {
+        return Math.max(this.peakSize, this.counts.size());
+    }
+
+    /**
+     * Returns the number of distinct words, or -1 if {@code top} has not been
+     * called yet.
+     *
+     * @return number of distinct words, or -1
+     */
+    public long distinct() {
+        return this.distinct;
+    }
+
+    /**
+     * Adds one occurrence of {@code word}, spilling the counts to a run if
+     * they exceed the memory budget.
+     *
+     * @param word
+     *            the word
+     * @throws UncheckedIOException
+     *             if a run cannot be written
+     * @updates this
+     */
+    public void add(String word) {
+        int size = this.counts.size();
+        int id = this.counts.increment(word);
+        this.total++;
+        if (this.counts.size() > size) {
+            this.footprint += WordCounts.footprint(word.length());
+        }
+        if (this.footprint > this.memoryBudget
+                || this.counts.count(id) == Integer.MAX_VALUE) {
+            try {
+                this.spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the in-memory counts to a new run and clears them.
+     *
+     * @throws IOException
+     *             if the run cannot be written
+     */
+    private void spill() throws IOException {
+        String[] words = new String[this.counts.size()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = this.counts.word(id);
+        }
+        Arrays.sort(words);
+
+        Path run = this.newRun();
+        try (RunWriter writer = new RunWriter(run)) {
+            for (String word : words) {
+                writer.write(word, this.counts.count(word));
+            }
+        }
+        this.peakSize = Math.max(this.peakSize, this.counts.size());
+        this.counts.clear();
+        this.footprint = 0;
+        this.spills++;
+    }
+
+    /**
+     * Creates an empty run file and records it.
+     *
+     * @return path of the run
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private Path newRun() throws IOException {
+        Files.createDirectories(this.spillFolder);
+        Path run = Files.createTempFile(this.spillFolder, "tagcloud-run-",
+                ".tmp");
+        this.runs.add(run);
+        return run;
+    }
+
+    /**
+     * Merges {@code inputs}, passing every word with the sum of its counts to
+     * {@code sink} in alphabetical order, and deletes the input runs.
+     *
+     * @param inputs
+     *            runs to merge
+     * @param sink
+     *            receiver of the merged entries
+     * @return number of distinct words merged
+     * @throws IOException
+     *             if a run cannot be read or an entry cannot be written
+     */
+    private long merge(List<Path> inputs, EntrySink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                Math.max(1, inputs.size()),
+                (r1, r2) -> r1.word.compareTo(r2.word));
+        List<RunReader> readers = new ArrayList<>(inputs.size());
+        long merged = 0;
+        try {
+            for (Path run : inputs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.word != null) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader first = queue.poll();
+                String word = first.word;
+                long count = first.count;
+                first.advance();
+                if (first.word != null) {
+                    queue.add(first);
+                }
+                while (!queue.isEmpty() && queue.peek().word.equals(word)) {
+                    RunReader next = queue.poll();
+                    count += next.count;
+                    next.advance();
+                    if (next.word != null) {
+                        queue.add(next);
+                    }
+                }
+                sink.accept(word, count);
+                merged++;
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        for (Path run : inputs) {
+            Files.deleteIfExists(run);
+            this.runs.remove(run);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the {@code n} words with the highest total counts, and records
+     * the number of distinct words. Afterwards the counter is empty.
+     *
+     * @param n
+     *            number of words to select
+     * @return the selected words and their total counts, at most
+     *         Integer.MAX_VALUE
+     * @throws IOException
+     *             if a run cannot be read or written
+     * @requires n > 0
+     * @clears this
+     */
+    public WordCounts top(int n) throws IOException {
+        assert n > 0 : "Violation of: n > 0";
+
+        TopWordSelector top = new TopWordSelector(n);
+        if (this.runs.isEmpty()) {
+            // everything fit in memory
+            top.offerAll(this.counts);
+            this.distinct = this.counts.size();
+            this.peakSize = Math.max(this.peakSize, this.counts.size());
+        } else {
+            if (this.counts.size() > 0) {
+                this.spill();
+            }
+            // merge groups of runs until one merge can take them all
+            while (this.runs.size() > MAX_FAN_IN) {
+                List<Path> group = new ArrayList<>(
+                        this.runs.subList(0, MAX_FAN_IN));
+                Path run = this.newRun();
+                try (RunWriter writer = new RunWriter(run)) {
+                    this.merge(group, writer::write);
+                }
+            }
+            this.distinct = this.merge(new ArrayList<>(this.runs),
+                    (word, count) -> top.offer(word,
+                            (int) Math.min(Integer.MAX_VALUE, count)));
+        }
+        this.counts.clear();
+        this.footprint = 0;
+
+        WordCounts selected = new WordCounts();
+        for (Map.Entry<String, Integer> e : top.toList()) {
+            selected.add(e.getKey(), e.getValue());
+        }
+        return selected;
+    }
+
+    /**
+     * Deletes the run files that have not been merged.
+     *
+     * @throws IOException
+     *             if a run cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Path run : this.runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        this.runs.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+}
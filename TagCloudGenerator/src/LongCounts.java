@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Counts of {@code long} keys in an open-addressing hash table with linear
+ * probing. Like {@code WordCounts}, each distinct key gets a stable id (its
+ * insertion index) and its key and count are held in plain arrays indexed by
+ * that id, so counting a key never allocates once the table has grown.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class LongCounts {
+
+    /**
+     * Initial number of hash slots (must be a power of two).
+     */
+    private static final int INITIAL_SLOTS = 1 << 12;
+
+    /**
+     * Key of each id.
+     */
+    private long[] keys = new long[INITIAL_SLOTS / 2];
+
+    /**
+     * Count of each id.
+     */
+    private int[] counts = new int[INITIAL_SLOTS / 2];
+
+    /**
+     * Hash slots holding id + 1, or 0 for an empty slot.
+     */
+    private int[] slots = new int[INITIAL_SLOTS];
+
+    /**
+     * Number of distinct keys.
+     */
+    private int size = 0;
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return number of distinct keys
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the key with the given id.
+     *
+     * @param id
+     *            id of the key
+     * @return the key
+     * @requires 0 <= id < size()
+     */
+    long key(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < |this|";
+        return this.keys[id];
+    }
+
+    /**
+     * Returns the count of the key with the given id.
+     *
+     * @param id
+     *            id of the key
+     * @return the count
+     * @requires 0 <= id < size()
+     */
+    int count(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < |this|";
+        return this.counts[id];
+    }
+
+    /**
+     * Adds one occurrence of {@code key}.
+     *
+     * @param key
+     *            key to count
+     * @return id of key
+     * @updates this
+     */
+    int increment(long key) {
+        int mask = this.slots.length - 1;
+        int slot = mix(key) & mask;
+        int entry = this.slots[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.keys[id] == key) {
+                this.counts[id]++;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.slots[slot];
+        }
+
+        int id = this.size;
+        if (id == this.counts.length) {
+            int cap = id * 2;
+            this.keys = Arrays.copyOf(this.keys, cap);
+            this.counts = Arrays.copyOf(this.counts, cap);
+        }
+        this.keys[id] = key;
+        this.counts[id] = 1;
+        this.slots[slot] = id + 1;
+        this.size++;
+
+        // keep the load factor at or below one half
+        if (this.size * 2 > this.slots.length) {
+            this.rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the number of hash slots.
+     */
+    private void rehash() {
+        int[] grown = new int[this.slots.length * 2];
+        int mask = grown.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.keys[id]) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = id + 1;
+        }
+        this.slots = grown;
+    }
+
+    /**
+     * Spreads the bits of a key into a hash.
+     *
+     * @param key
+     *            key to hash
+     * @return spread hash
+     */
+    private static int mix(long key) {
+        long x = key * 0x9E3779B97F4A7C15L;
+        return (int) (x ^ (x >>> 32));
+    }
+
+}
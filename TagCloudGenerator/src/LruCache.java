@@ -0,0 +1,186 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe cache that evicts its least recently used entries once the
+ * total weight of its values exceeds a capacity. The weight of a value, e.g.
+ * its approximate size in bytes, is computed once when it is put. Hits,
+ * misses and evictions are counted.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class LruCache<K, V> {
+
+    /**
+     * A value with its weight.
+     *
+     * @param <V>
+     *            type of the value
+     */
+    private static final class Weighted<V> {
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Its weight.
+         */
+        private final long weight;
+
+        /**
+         * Creates a weighted value.
+         *
+         * @param value
+         *            the value
+         * @param weight
+         *            its weight
+         */
+        Weighted(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Entries in access order, least recently used first.
+     */
+    private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    /**
+     * Weigher of values.
+     */
+    private final ToLongFunction<V> weigher;
+
+    /**
+     * Largest total weight kept.
+     */
+    private final long capacity;
+
+    /**
+     * Total weight of the values.
+     */
+    private long weight = 0;
+
+    /**
+     * Number of lookups that found a value.
+     */
+    private long hits = 0;
+
+    /**
+     * Number of lookups that found nothing.
+     */
+    private long misses = 0;
+
+    /**
+     * Number of values evicted.
+     */
+    private long evictions = 0;
+
+    /**
+     * Creates a cache keeping values of total weight at most
+     * {@code capacity}.
+     *
+     * @param capacity
+     *            largest total weight kept
+     * @param weigher
+     *            weigher of values
+     * @requires capacity >= 0
+     */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        assert capacity >= 0 : "Violation of: capacity >= 0";
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value of {@code key}, or null if it is not cached, and
+     * counts the lookup as a hit or a miss.
+     *
+     * @param key
+     *            the key
+     * @return the value of key, or null
+     */
+    synchronized V get(K key) {
+        Weighted<V> entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.value;
+    }
+
+    /**
+     * Caches {@code value} under {@code key}, then evicts least recently used
+     * values until the total weight is at most the capacity. A value heavier
+     * than the capacity is not cached.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @updates this
+     */
+    synchronized void put(K key, V value) {
+        long w = this.weigher.applyAsLong(value);
+        Weighted<V> old = this.entries.remove(key);
+        if (old != null) {
+            this.weight -= old.weight;
+        }
+        if (w > this.capacity) {
+            return;
+        }
+        this.entries.put(key, new Weighted<>(value, w));
+        this.weight += w;
+        Iterator<Weighted<V>> it = this.entries.values().iterator();
+        while (this.weight > this.capacity) {
+            Weighted<V> eldest = it.next();
+            it.remove();
+            this.weight -= eldest.weight;
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Removes every value whose key satisfies {@code stale}.
+     *
+     * @param stale
+     *            test of the keys to remove
+     * @updates this
+     */
+    synchronized void removeIf(Predicate<K> stale) {
+        Iterator<Map.Entry<K, Weighted<V>>> it = this.entries.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Weighted<V>> e = it.next();
+            if (stale.test(e.getKey())) {
+                it.remove();
+                this.weight -= e.getValue().weight;
+            }
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the statistics of this cache.
+     *
+     * @return statistics of this cache
+     */
+    synchronized String stats() {
+        return "entries=" + this.entries.size() + " weight=" + this.weight
+                + " capacity=" + this.capacity + " hits=" + this.hits
+                + " misses=" + this.misses + " evictions=" + this.evictions;
+    }
+
+}
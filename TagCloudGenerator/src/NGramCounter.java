@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Counts the n-grams (runs of {@code n} consecutive words, e.g. "tom sawyer")
+ * of a sequence of words without building a {@code String} per n-gram. The
+ * words are interned in a {@code WordCounts}, whose ids this counter receives
+ * in order. A k-gram, for k from 2 to n, is counted in a {@code LongCounts}
+ * under the key (id of its first k - 1 words as a (k - 1)-gram) &lt;&lt; 32
+ * | (id of its last word), so the ids of the k-grams ending at the previous
+ * word are all the window that needs to be kept. The phrases of n-grams are
+ * only built for the candidates of {@link #top(int)}.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class NGramCounter implements IntConsumer {
+
+    /**
+     * Number of words of the counted n-grams.
+     */
+    private final int n;
+
+    /**
+     * Words of the n-grams and their ids.
+     */
+    private final WordCounts words;
+
+    /**
+     * Counts of the k-grams at index k, for k from 2 to n.
+     */
+    private final LongCounts[] grams;
+
+    /**
+     * Id of the k-gram ending at the previous word at index k, or -1 if there
+     * is none yet; index 1 holds the id of the previous word.
+     */
+    private final int[] window;
+
+    /**
+     * Creates a counter of the n-grams of the words interned in
+     * {@code words}.
+     *
+     * @param n
+     *            number of words of an n-gram
+     * @param words
+     *            dictionary the ids given to {@link #accept(int)} refer to
+     * @requires n >= 2
+     */
+    public NGramCounter(int n, WordCounts words) {
+        assert n >= 2 : "Violation of: n >= 2";
+        this.n = n;
+        this.words = words;
+        this.grams = new LongCounts[n + 1];
+        for (int k = 2; k <= n; k++) {
+            this.grams[k] = new LongCounts();
+        }
+        this.window = new int[n + 1];
+        Arrays.fill(this.window, -1);
+    }
+
+    /**
+     * Counts the n-gram ending at the word with id {@code wordId}, and the
+     * shorter grams ending there that later n-grams start with.
+     *
+     * @param wordId
+     *            id of the next word in the dictionary
+     * @updates this
+     */
+    @Override
+    public void accept(int wordId) {
+        // longest first, so that window[k - 1] still ends at the previous word
+        for (int k = this.n; k >= 2; k--) {
+            int prefix = this.window[k - 1];
+            if (prefix >= 0) {
+                this.window[k] = this.grams[k]
+                        .increment(((long) prefix << 32) | wordId);
+            }
+        }
+        this.window[1] = wordId;
+    }
+
+    /**
+     * Returns the number of distinct n-grams counted.
+     *
+     * @return number of distinct n-grams
+     */
+    public int size() {
+        return this.grams[this.n].size();
+    }
+
+    /**
+     * Returns the total number of n-grams counted.
+     *
+     * @return total number of n-grams
+     */
+    public long total() {
+        long total = 0;
+        LongCounts counts = this.grams[this.n];
+        for (int id = 0; id < counts.size(); id++) {
+            total += counts.count(id);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the phrase of the k-gram with the given id: its words separated
+     * by single spaces.
+     *
+     * @param k
+     *            number of words of the gram
+     * @param id
+     *            id of the gram
+     * @return phrase of the gram
+     */
+    private String phrase(int k, int id) {
+        StringBuilder phrase = new StringBuilder();
+        this.appendPhrase(phrase, k, id);
+        return phrase.toString();
+    }
+
+    /**
+     * Appends the phrase of the k-gram with the given id to {@code phrase}.
+     *
+     * @param phrase
+     *            builder the phrase is appended to
+     * @param k
+     *            number of words of the gram
+     * @param id
+     *            id of the gram
+     * @updates phrase
+     */
+    private void appendPhrase(StringBuilder phrase, int k, int id) {
+        if (k == 1) {
+            phrase.append(this.words.word(id));
+        } else {
+            long key = this.grams[k].key(id);
+            this.appendPhrase(phrase, k - 1, (int) (key >>> 32));
+            phrase.append(' ').append(this.words.word((int) key));
+        }
+    }
+
+    /**
+     * Returns the {@code m} n-grams with the highest counts, as phrases, with
+     * the same ranking as {@code TagCloud.sort}. A phrase is only built for an
+     * n-gram whose count is high enough to enter the selection.
+     *
+     * @param m
+     *            number of n-grams to select
+     * @return the selected phrases and their counts
+     * @requires m > 0
+     */
+    public WordCounts top(int m) {
+        assert m > 0 : "Violation of: m > 0";
+
+        TopWordSelector top = new TopWordSelector(m);
+        LongCounts counts = this.grams[this.n];
+        for (int id = 0; id < counts.size(); id++) {
+            int count = counts.count(id);
+            if (top.admits(count)) {
+                top.offer(this.phrase(this.n, id), count);
+            }
+        }
+        WordCounts selected = new WordCounts();
+        for (Map.Entry<String, Integer> e : top.toList()) {
+            selected.add(e.getKey(), e.getValue());
+        }
+        return selected;
+    }
+
+}
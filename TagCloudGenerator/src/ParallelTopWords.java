@@ -0,0 +1,116 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@code n} highest-ranked words of a map for clouds too large
+ * for the heap of {@code TopWordSelector}, e.g. tens of thousands of words or
+ * the whole ranked vocabulary. Every word is packed with its count into a
+ * {@code long}, (count << 32 | id), and the keys are sorted with
+ * {@code Arrays.parallelSort} on all cores, so ranking by count compares
+ * primitives only. Strings are compared only to break the tie among the
+ * words with the lowest selected count, and to sort the selected words
+ * alphabetically, again in parallel. The selection and its order are exactly
+ * those of {@code TopWordSelector} followed by {@code TagCloud.WordOrder}.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class ParallelTopWords {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelTopWords() {
+    }
+
+    /**
+     * Returns the {@code n} words of {@code wordMap} with the highest counts,
+     * sorted alphabetically. Of the words with equal counts the
+     * alphabetically last are selected, as {@code TopWordSelector} does.
+     *
+     * @param wordMap
+     *            map of words and counts
+     * @param n
+     *            number of words to select
+     * @return the selected words and their counts, sorted alphabetically
+     * @requires n > 0 and every count in wordMap is >= 0
+     */
+    static List<Map.Entry<String, Integer>> select(
+            Map<String, Integer> wordMap, int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        // give every word an id, walking the primitive arrays of WordCounts
+        int size = wordMap.size();
+        String[] words = new String[size];
+        int[] counts = new int[size];
+        if (wordMap instanceof WordCounts) {
+            WordCounts wordCounts = (WordCounts) wordMap;
+            for (int id = 0; id < size; id++) {
+                words[id] = wordCounts.word(id);
+                counts[id] = wordCounts.count(id);
+            }
+        } else {
+            int id = 0;
+            for (Map.Entry<String, Integer> entry : wordMap.entrySet()) {
+                words[id] = entry.getKey();
+                counts[id] = entry.getValue();
+                id++;
+            }
+        }
+
+        // rank by count: the keys of the selected words end up at the end
+        long[] keys = new long[size];
+        for (int id = 0; id < size; id++) {
+            assert counts[id] >= 0 : "Violation of: counts are >= 0";
+            keys[id] = (long) counts[id] << 32 | id;
+        }
+        Arrays.parallelSort(keys);
+
+        int selected = Math.min(n, size);
+        String[] top = new String[selected];
+        int filled = 0;
+        if (selected > 0) {
+            // keys[tieStart, tieEnd) share the lowest selected count; the
+            // ones from tieEnd on are selected whatever their words
+            int cut = size - selected;
+            long tieCount = keys[cut] >>> 32;
+            int tieStart = cut;
+            while (tieStart > 0 && keys[tieStart - 1] >>> 32 == tieCount) {
+                tieStart--;
+            }
+            int tieEnd = cut + 1;
+            while (tieEnd < size && keys[tieEnd] >>> 32 == tieCount) {
+                tieEnd++;
+            }
+            for (int i = tieEnd; i < size; i++) {
+                top[filled++] = words[(int) keys[i]];
+            }
+
+            // of the tied words, the alphabetically last are selected; when
+            // all of them are, they need not be sorted here
+            String[] tied = new String[tieEnd - tieStart];
+            for (int i = tieStart; i < tieEnd; i++) {
+                tied[i - tieStart] = words[(int) keys[i]];
+            }
+            if (selected - filled < tied.length) {
+                Arrays.parallelSort(tied);
+            }
+            System.arraycopy(tied, tied.length - (selected - filled), top,
+                    filled, selected - filled);
+        }
+
+        // sort alphabetically A-Z, comparing the words directly rather than
+        // through entries; their counts are then looked up again
+        Arrays.parallelSort(top);
+        List<Map.Entry<String, Integer>> wordList = new ArrayList<>(selected);
+        for (String word : top) {
+            wordList.add(new AbstractMap.SimpleEntry<>(word,
+                    wordMap.get(word)));
+        }
+        return wordList;
+    }
+
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the words of a file in parallel. The file is split into byte ranges
+ * whose boundaries fall on separators, each range is counted by a
+ * {@code ForkJoinPool} worker into its own {@code ByteWordTable}, and the
+ * partial tables are merged pairwise as the tasks join.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class ParallelWordCounter {
+
+    /**
+     * Number of chunks created per worker, so that workers finishing early can
+     * steal the remaining ones.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /**
+     * Smallest chunk worth counting on its own worker.
+     */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Number of bytes read at a time while looking for a separator.
+     */
+    private static final int PROBE_SIZE = 1 << 12;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelWordCounter() {
+    }
+
+    /**
+     * Task counting the chunks {@code [lo, hi)} of a file.
+     */
+    private static final class CountTask extends RecursiveTask<ByteWordTable> {
+
+        /**
+         * Serialization id required by {@code RecursiveTask}.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Channel of the input file.
+         */
+        private final transient FileChannel channel;
+
+        /**
+         * Charset the input file is encoded in.
+         */
+        private final transient Charset charset;
+
+        /**
+         * Chunk boundaries; chunk i is [bounds[i], bounds[i + 1]).
+         */
+        private final long[] bounds;
+
+        /**
+         * First chunk counted by this task.
+         */
+        private final int lo;
+
+        /**
+         * One past the last chunk counted by this task.
+         */
+        private final int hi;
+
+        /**
+         * Creates a task counting chunks {@code [lo, hi)}.
+         *
+         * @param channel
+         *            channel of the input file
+         * @param charset
+         *            charset the input file is encoded in
+         * @param bounds
+         *            chunk boundaries
+         * @param lo
+         *            first chunk to count
+         * @param hi
+         *            one past the last chunk to count
+         */
+        CountTask(FileChannel channel, Charset charset, long[] bounds, int lo,
+                int hi) {
+            this.channel = channel;
+            this.charset = charset;
+            this.bounds = bounds;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected ByteWordTable compute() {
+            if (this.hi - this.lo == 1) {
+                ByteWordTable table = new ByteWordTable(this.charset);
+                try {
+                    ByteTokenizer.countRange(this.channel, this.bounds[this.lo],
+                            this.bounds[this.hi], table);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return table;
+            }
+
+            int mid = (this.lo + this.hi) >>> 1;
+            CountTask left = new CountTask(this.channel, this.charset,
+                    this.bounds, this.lo, mid);
+            CountTask right = new CountTask(this.channel, this.charset,
+                    this.bounds, mid, this.hi);
+            left.fork();
+            ByteWordTable rightTable = right.compute();
+            ByteWordTable leftTable = left.join();
+
+            // merge the smaller partial table into the larger one
+            if (leftTable.size() < rightTable.size()) {
+                rightTable.addAll(leftTable);
+                return rightTable;
+            }
+            leftTable.addAll(rightTable);
+            return leftTable;
+        }
+    }
+
+    /**
+     * Returns the position just past the first separator at or after
+     * {@code pos}, or {@code size} if there is none.
+     *
+     * @param channel
+     *            channel of the input file
+     * @param pos
+     *            position to start looking from
+     * @param size
+     *            size of the file
+     * @return position of the chunk boundary
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long nextBoundary(FileChannel channel, long pos, long size)
+            throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        while (pos < size) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (ByteTokenizer.isSeparator(probe.get(i))) {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Splits {@code [0, size)} into about {@code chunks} ranges whose
+     * boundaries all fall just after a separator.
+     *
+     * @param channel
+     *            channel of the input file
+     * @param size
+     *            size of the file
+     * @param chunks
+     *            desired number of ranges
+     * @return increasing boundaries, starting with 0 and ending with size
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long[] splitOnSeparators(FileChannel channel, long size,
+            int chunks) throws IOException {
+        long step = Math.max(MIN_CHUNK_SIZE, size / chunks + 1);
+        long[] bounds = new long[(int) (size / step) + 2];
+        int n = 0;
+        bounds[n++] = 0;
+        long pos = 0;
+        while (pos < size) {
+            pos = nextBoundary(channel, pos + step, size);
+            bounds[n++] = pos;
+        }
+        if (n == 1) {
+            bounds[n++] = 0;
+        }
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Returns a table with every word in the given file and its count,
+     * counting separator-aligned chunks of the file on {@code workers}
+     * threads.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the input file is encoded in
+     * @param workers
+     *            number of worker threads to use
+     * @return table of all words read and their counts
+     * @throws IOException
+     *             if the file cannot be opened or read
+     * @requires ByteTokenizer.supports(charset) and workers > 0
+     */
+    static ByteWordTable countFile(Path file, Charset charset, int workers)
+            throws IOException {
+        assert workers > 0 : "Violation of: workers > 0";
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long[] bounds = splitOnSeparators(channel, channel.size(),
+                    workers * CHUNKS_PER_WORKER);
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                return pool.invoke(new CountTask(channel, charset, bounds, 0,
+                        bounds.length - 1));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Instrumentation of one run of {@code TagCloud.main}. Every phase of the run
+ * is timed and the bytes the running thread allocates during it are counted;
+ * each phase is also recorded as a {@code tagcloud.Phase} JFR event, and the
+ * whole run as a {@code tagcloud.Run} event, when a flight recording is
+ * active (e.g. {@code java -XX:StartFlightRecording ...}). At the end of the
+ * run, {@code emit} writes a one-line JSON summary to standard error, or to
+ * the file named by the {@code tagcloud.profile} system property.
+ *
+ * <p>
+ * Allocations are those of the thread running main; the worker threads of
+ * the parallel tokenizer are not included.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class RunProfile {
+
+    /**
+     * Name of the system property giving the file the summary is written to
+     * instead of standard error.
+     */
+    static final String PROFILE_PROPERTY = "tagcloud.profile";
+
+    /**
+     * JFR event recording one phase of a run.
+     */
+    @Name("tagcloud.Phase")
+    @Label("Tag Cloud Phase")
+    @Category("Tag Cloud")
+    @Description("One phase of building a tag cloud")
+    static final class PhaseEvent extends Event {
+
+        /**
+         * Name of the phase.
+         */
+        @Label("Phase")
+        String phase;
+
+        /**
+         * Bytes allocated by the thread during the phase.
+         */
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    /**
+     * JFR event summarizing a run.
+     */
+    @Name("tagcloud.Run")
+    @Label("Tag Cloud Run")
+    @Category("Tag Cloud")
+    @Description("Building one tag cloud")
+    static final class RunEvent extends Event {
+
+        /**
+         * Input file.
+         */
+        @Label("Input File")
+        String inputFile;
+
+        /**
+         * Size of the input file.
+         */
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        /**
+         * Number of words counted.
+         */
+        @Label("Tokens")
+        long tokens;
+
+        /**
+         * Number of distinct words, or -1 if unknown.
+         */
+        @Label("Distinct Words")
+        long distinctWords;
+
+        /**
+         * Largest number of entries held by the word map.
+         */
+        @Label("Peak Map Size")
+        long peakMapSize;
+    }
+
+    /**
+     * Timing of a finished phase.
+     */
+    private static final class Phase {
+
+        /**
+         * Name of the phase.
+         */
+        private final String name;
+
+        /**
+         * Wall time of the phase in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Bytes allocated during the phase, or -1 if unknown.
+         */
+        private final long allocated;
+
+        /**
+         * Creates the timing of a phase.
+         *
+         * @param name
+         *            name of the phase
+         * @param nanos
+         *            wall time in nanoseconds
+         * @param allocated
+         *            bytes allocated, or -1
+         */
+        Phase(String name, long nanos, long allocated) {
+            this.name = name;
+            this.nanos = nanos;
+            this.allocated = allocated;
+        }
+    }
+
+    /**
+     * Source of per-thread allocation counts, or null if unavailable.
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Event of the whole run.
+     */
+    private final RunEvent run = new RunEvent();
+
+    /**
+     * Finished phases, in order.
+     */
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Event of the current phase, or null if no phase is running.
+     */
+    private PhaseEvent current = null;
+
+    /**
+     * Start of the current phase, from {@code System.nanoTime}.
+     */
+    private long start;
+
+    /**
+     * Bytes allocated by the thread at the start of the current phase.
+     */
+    private long startAllocated;
+
+    /**
+     * Start of the run, from {@code System.nanoTime}.
+     */
+    private final long runStart = System.nanoTime();
+
+    /**
+     * Creates the profile of a run reading {@code inputFile}.
+     *
+     * @param inputFile
+     *            input file of the run
+     */
+    RunProfile(String inputFile) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            } else if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.threads = threads;
+        this.run.begin();
+        this.run.inputFile = inputFile;
+        this.run.distinctWords = -1;
+        try {
+            this.run.bytesIn = Files.size(Paths.get(inputFile));
+        } catch (IOException e) {
+            this.run.bytesIn = -1;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if
+     * unknown.
+     *
+     * @return bytes allocated by the current thread
+     */
+    private long allocatedBytes() {
+        if (this.threads == null) {
+            return -1;
+        }
+        return this.threads.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /**
+     * Starts phase {@code name}, ending the current phase if any.
+     *
+     * @param name
+     *            name of the phase
+     * @updates this
+     */
+    void begin(String name) {
+        this.end();
+        this.current = new PhaseEvent();
+        this.current.phase = name;
+        this.current.begin();
+        this.startAllocated = this.allocatedBytes();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Ends the current phase, if any.
+     *
+     * @updates this
+     */
+    void end() {
+        if (this.current == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - this.start;
+        long allocated = -1;
+        if (this.startAllocated >= 0) {
+            allocated = this.allocatedBytes() - this.startAllocated;
+        }
+        this.current.end();
+        this.current.allocated = allocated;
+        this.current.commit();
+        this.phases.add(new Phase(this.current.phase, nanos, allocated));
+        this.current = null;
+    }
+
+    /**
+     * Records the words read by the run.
+     *
+     * @param tokens
+     *            number of words read
+     * @param distinctWords
+     *            number of distinct words, or -1 if unknown
+     * @param peakMapSize
+     *            largest number of entries held by the word map
+     * @updates this
+     */
+    void counted(long tokens, long distinctWords, long peakMapSize) {
+        this.run.tokens = tokens;
+        this.run.distinctWords = distinctWords;
+        this.run.peakMapSize = peakMapSize;
+    }
+
+    /**
+     * Returns the wall time of phase {@code name} in nanoseconds, or 0 if it
+     * did not run.
+     *
+     * @param name
+     *            name of the phase
+     * @return wall time of the phase
+     */
+    private long nanos(String name) {
+        long nanos = 0;
+        for (Phase p : this.phases) {
+            if (p.name.equals(name)) {
+                nanos += p.nanos;
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Returns {@code s} as a JSON string literal.
+     *
+     * @param s
+     *            the string
+     * @return JSON string literal of s
+     */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Returns the summary of the run as a one-line JSON object. Counting runs
+     * in phase "generateWordMap", from which tokens per second is derived.
+     *
+     * @return JSON summary of the run
+     */
+    String toJson() {
+        long total = System.nanoTime() - this.runStart;
+        long countNanos = this.nanos("generateWordMap");
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"inputFile\":").append(quote(this.run.inputFile));
+        sb.append(",\"bytesIn\":").append(this.run.bytesIn);
+        sb.append(",\"tokens\":").append(this.run.tokens);
+        sb.append(",\"tokensPerSecond\":");
+        if (countNanos > 0) {
+            sb.append(Math.round(this.run.tokens * 1e9 / countNanos));
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"distinctWords\":");
+        if (this.run.distinctWords >= 0) {
+            sb.append(this.run.distinctWords);
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"peakMapSize\":").append(this.run.peakMapSize);
+        sb.append(String.format(Locale.ROOT, ",\"wallMillis\":%.3f",
+                total / 1e6));
+        sb.append(",\"phases\":[");
+        for (int i = 0; i < this.phases.size(); i++) {
+            Phase p = this.phases.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":").append(quote(p.name));
+            sb.append(String.format(Locale.ROOT, ",\"wallMillis\":%.3f",
+                    p.nanos / 1e6));
+            sb.append(",\"allocatedBytes\":");
+            if (p.allocated >= 0) {
+                sb.append(p.allocated);
+            } else {
+                sb.append("null");
+            }
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Ends the run: ends the current phase, records the run event, and writes
+     * the summary to standard error or to the file named by
+     * {@code PROFILE_PROPERTY}.
+     *
+     * @updates this
+     */
+    void emit() {
+        this.end();
+        this.run.end();
+        this.run.commit();
+        String json = this.toJson();
+        String file = System.getProperty(PROFILE_PROPERTY);
+        if (file == null) {
+            System.err.println(json);
+            return;
+        }
+        try {
+            Files.write(Paths.get(file), (json + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Error writing profile to " + file);
+        }
+    }
+
+}
@@ -1,20 +1,24 @@
 import java.io.File;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Utility class which generates a tag cloud as an HTML file from a given input
@@ -25,23 +29,6 @@ import java.util.TreeMap;
  */
 public final class TagCloud {
 
-    /**
-     * Compare {@code Integer}s in decreasing numerical order.
-     */
-    private static class CountOrder
-            implements Comparator<Map.Entry<String, Integer>> {
-        @Override
-        public int compare(Map.Entry<String, Integer> count1,
-                Map.Entry<String, Integer> count2) {
-            int x = count2.getValue().compareTo(count1.getValue());
-            // if entries have same values, check keys
-            if (x == 0) {
-                x = count2.getKey().compareTo(count1.getKey());
-            }
-            return x;
-        }
-    }
-
     /**
      * Compare {@code String}s in alphabetical order.
      */
@@ -63,7 +50,102 @@ public final class TagCloud {
     /**
      * String containing separators.
      */
-    private static final String SEPARATORS = " \t\n\r,'-.!?|[]{}*&@#$%^_\";:/()`~";
+    static final String SEPARATORS = " \t\n\r,'-.!?|[]{}*&@#$%^_\";:/()`~";
+
+    /**
+     * Whether each ASCII char is one of {@code SEPARATORS}.
+     */
+    private static final boolean[] IS_SEPARATOR = new boolean[128];
+
+    static {
+        for (int i = 0; i < SEPARATORS.length(); i++) {
+            IS_SEPARATOR[SEPARATORS.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * Size of the buffer {@link #generateWordMap(BufferedReader)} reads
+     * through.
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of words from which {@link #topWords(Map, int)} sorts packed
+     * counts in parallel rather than keeping a heap of the selected words.
+     */
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 15;
+
+    /**
+     * Name of the system property selecting how main tokenizes the input file:
+     * "reader" (default) reads it line by line, "mapped" reads it through
+     * memory-mapped windows.
+     */
+    static final String TOKENIZER_PROPERTY = "tagcloud.tokenizer";
+
+    /**
+     * Name of the system property giving the number of worker threads used by
+     * the "mapped" tokenizer, and the number of decompressing and of counting
+     * threads used for compressed input files (default 1).
+     */
+    static final String THREADS_PROPERTY = "tagcloud.threads";
+
+    /**
+     * Name of the system property that, when "true", makes the tokenizers
+     * working on bytes (the "mapped" tokenizer, and byte-level counting in
+     * general) find separators with SIMD instructions through the Vector API.
+     * This needs the {@code src-vector} sources on the class path and
+     * {@code --add-modules jdk.incubator.vector}; without them the scalar
+     * tokenizer is used.
+     */
+    static final String SIMD_PROPERTY = "tagcloud.simd";
+
+    /**
+     * Name of the system property selecting how main counts words: "exact"
+     * (default) counts every word, "approximate" keeps only the most frequent
+     * words within a fixed memory budget, "external" counts every word within
+     * a fixed memory budget by spilling counts to disk.
+     */
+    static final String COUNTER_PROPERTY = "tagcloud.counter";
+
+    /**
+     * Name of the system property giving the memory budget, in megabytes, of
+     * the "approximate" and "external" counters (default 64).
+     */
+    static final String MEMORY_PROPERTY = "tagcloud.memory";
+
+    /**
+     * Name of the system property giving the folder the "external" counter
+     * spills counts to (default the system temporary folder).
+     */
+    static final String SPILL_PROPERTY = "tagcloud.spill";
+
+    /**
+     * Name of the system property giving the path of a word-count snapshot.
+     * When set, main only tokenizes the bytes appended to the input file since
+     * the snapshot was saved, and then updates the snapshot. It is ignored for
+     * compressed input files.
+     */
+    static final String SNAPSHOT_PROPERTY = "tagcloud.snapshot";
+
+    /**
+     * Name of the system property giving the number of words of the phrases
+     * main makes a cloud of (default 1). Above 1, main counts the n-grams of
+     * the input, e.g. "tom sawyer" for 2, instead of its single words.
+     */
+    static final String NGRAM_PROPERTY = "tagcloud.ngram";
+
+    /**
+     * Name of the system property giving the folder of a cache of word maps.
+     * When set, main reads the word map of an input whose contents it counted
+     * before from the cache instead of tokenizing the input.
+     */
+    static final String CACHE_PROPERTY = "tagcloud.cache";
+
+    /**
+     * Name of the system property giving the size budget, in megabytes, of
+     * the cache of word maps (default 256).
+     */
+    static final String CACHE_SIZE_PROPERTY = "tagcloud.cache.size";
 
     /**
      * Private constructor so this utility class cannot be instantiated.
@@ -101,7 +183,7 @@ public final class TagCloud {
      *      is not subset of entries(SEPARATORS))
      * </pre>
      */
-    private static String nextWordOrSeparator(String text, int position) {
+    static String nextWordOrSeparator(String text, int position) {
         assert text != null : "Violation of: text is not null";
         assert 0 <= position : "Violation of: 0 <= position";
         assert position < text.length() : "Violation of: position < |text|";
@@ -130,10 +212,64 @@ public final class TagCloud {
         return text.substring(position, endOfStr);
     }
 
+    /**
+     * Passes each word in the given line, converted to lowercase, to
+     * {@code words} in the order the words appear.
+     *
+     * @param s
+     *            the line
+     * @param words
+     *            consumer of the words in the line
+     * @ensures every word in {@code s} is passed to {@code words}
+     */
+    static void forEachWord(String s, Consumer<String> words) {
+        int currLen = s.length();
+        int currPos = 0;
+
+        for (int i = currPos; i < currLen; i += 0) {
+            String currWordOrSep = nextWordOrSeparator(s, i).toLowerCase();
+            int currWordOrSepLen = currWordOrSep.length();
+
+            // pass on words, skipping separator strings
+            if (SEPARATORS.indexOf(currWordOrSep.charAt(0)) < 0) {
+                words.accept(currWordOrSep);
+            }
+            // makes sure i is set to the position of the next word/separator
+            i += currWordOrSepLen;
+        }
+    }
+
+    /**
+     * Reads every line from the input and passes each word in it, converted to
+     * lowercase, to {@code words} in the order the words appear.
+     *
+     * @param in
+     *            BufferedReader to read the input from
+     * @param words
+     *            consumer of the words read
+     * @ensures <pre>
+     *          every word read from {@code in} is passed to {@code words}
+     *          </pre>
+     */
+    static void readWords(BufferedReader in, Consumer<String> words)
+            throws IOException {
+
+        String s = in.readLine();
+        // continually read lines and pass on every word in them
+        while (s != null) {
+            forEachWord(s, words);
+            // read the next line
+            s = in.readLine();
+        }
+    }
+
     /**
      * Returns a map containing each unique word, with all words converted to
      * lowercase, and its number of occurrences after each line from the input
-     * file is read.
+     * file is read. Words are counted with
+     * {@link WordCounts#increment(char[], int, int)} straight from the buffer
+     * the input is read into, so no {@code String} is created for a word
+     * already counted or for a separator.
      *
      * @param in
      *            BufferedReader to read the input file
@@ -142,48 +278,274 @@ public final class TagCloud {
      *          and each word's respective counts </pre>
      * @return a map containing all words read and their counts
      */
-    public static Map<String, Integer> generateWordMap(BufferedReader in)
+    public static WordCounts generateWordMap(BufferedReader in)
             throws IOException {
+        WordCounts wordCount = new WordCounts();
+        countWords(in, wordCount, id -> {
+        });
+        return wordCount;
+    }
 
-        Map<String, Integer> wordCount = new TreeMap<String, Integer>();
-        String s = in.readLine();
-        // continually read lines and generate a map with every unique words and its count
-        while (s != null) {
-
-            int currLen = s.length();
-            int currPos = 0;
+    /**
+     * Counts the words read from {@code in}, converted to lowercase, in
+     * {@code wordCount} as {@link #generateWordMap(BufferedReader)} does, and
+     * passes the id of each word in {@code wordCount} to {@code ids} in the
+     * order the words appear.
+     *
+     * @param in
+     *            BufferedReader to read the input file
+     * @param wordCount
+     *            map the words are counted in
+     * @param ids
+     *            consumer of the ids of the words read
+     * @updates wordCount
+     */
+    static void countWords(BufferedReader in, WordCounts wordCount,
+            IntConsumer ids) throws IOException {
+
+        // line terminators are separators, so the input is scanned in blocks
+        // rather than lines, and each word is counted straight from the block
+        char[] buf = new char[READ_BUFFER_SIZE];
+        // buf[0, held) is the start of a word cut off by the previous block
+        int held = 0;
+        // number of chars still to skip on the current line (see below)
+        int skip = 0;
+        while (true) {
+            if (held == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = in.read(buf, held, buf.length - held);
+            if (n < 0) {
+                break;
+            }
+            int end = held + n;
+            int i = held;
+            while (skip > 0 && i < end && !isLineTerminator(buf[i])) {
+                i++;
+                skip--;
+            }
+            if (i < end) {
+                skip = 0;
+            }
+            int wordStart = held > 0 ? 0 : i;
+            while (i < end) {
+                if (!isSeparator(buf[i])) {
+                    i++;
+                } else if (i == wordStart) {
+                    i++;
+                    wordStart = i;
+                } else {
+                    int id = wordCount.increment(buf, wordStart, i);
+                    ids.accept(id);
+                    /*
+                     * Like forEachWord, resume where the word would end if it
+                     * were as long as its lowercase form, which is not always
+                     * the case (e.g. dotted capital I lowercases to two
+                     * chars); this skips chars or rescans the rest of the
+                     * word, but never goes past the end of the line.
+                     */
+                    int next = wordStart + wordCount.word(id).length();
+                    if (next < i) {
+                        wordStart = next;
+                    } else {
+                        while (i < next && i < end
+                                && !isLineTerminator(buf[i])) {
+                            i++;
+                        }
+                        if (i == end) {
+                            skip = next - i;
+                        }
+                        wordStart = i;
+                    }
+                }
+            }
+            held = end - wordStart;
+            System.arraycopy(buf, wordStart, buf, 0, held);
+        }
+        // the last word may be rescanned as well
+        int wordStart = 0;
+        while (wordStart < held) {
+            int id = wordCount.increment(buf, wordStart, held);
+            ids.accept(id);
+            wordStart += wordCount.word(id).length();
+        }
+    }
 
-            for (int i = currPos; i < currLen; i += 0) {
-                String currWordOrSep = nextWordOrSeparator(s, i).toLowerCase();
-                int currWordOrSepLen = currWordOrSep.length();
+    /**
+     * Returns whether the given char is one of {@code SEPARATORS}.
+     *
+     * @param c
+     *            char to classify
+     * @return true iff c is a separator
+     */
+    static boolean isSeparator(char c) {
+        return c < IS_SEPARATOR.length && IS_SEPARATOR[c];
+    }
 
-                // branch for when it is the first occurrence of a word
-                if (SEPARATORS.indexOf(currWordOrSep.charAt(0)) < 0
-                        && !wordCount.containsKey(currWordOrSep)) {
+    /**
+     * Returns whether the given char ends a line for
+     * {@code BufferedReader.readLine()}.
+     *
+     * @param c
+     *            char to classify
+     * @return true iff c is a line terminator
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r';
+    }
 
-                    wordCount.put(currWordOrSep, 1);
+    /**
+     * Returns a map containing each unique word, with all words converted to
+     * lowercase, and its number of occurrences in the given file. The file is
+     * memory-mapped and split into words directly on its bytes, so only the
+     * first occurrence of each word creates a {@code String}. If the default
+     * charset cannot be tokenized on bytes, or the file holds a word whose
+     * lowercase form has another length (e.g. one with dotted capital I),
+     * the file is read with {@link #generateWordMap(BufferedReader)} instead.
+     *
+     * @param file
+     *            path of the input file
+     * @ensures <pre>
+     *          generateWordMap contains every unique word in {@code file}
+     *          and each word's respective counts, equal to the counts of
+     *          generateWordMap(CompressedWordCounter.newReader(file,
+     *          Charset.defaultCharset())) </pre>
+     * @return a map containing all words read and their counts
+     */
+    public static WordCounts generateWordMap(Path file)
+            throws IOException {
+        return generateWordMap(file, 1);
+    }
 
-                } else if (SEPARATORS.indexOf(currWordOrSep.charAt(0)) < 0) {
+    /**
+     * Returns a map containing each unique word, with all words converted to
+     * lowercase, and its number of occurrences in the given file, counted by
+     * {@code workers} threads. The file is split into byte ranges that begin
+     * and end on separators, each range is counted on a {@code ForkJoinPool}
+     * worker into its own table, and the partial tables are merged. A gzip or
+     * zip compressed file is instead decompressed on {@code workers} threads
+     * while its words are counted on {@code workers} others.
+     *
+     * @param file
+     *            path of the input file
+     * @param workers
+     *            number of worker threads to count with
+     * @requires workers > 0
+     * @ensures <pre>
+     *          generateWordMap contains every unique word in {@code file}
+     *          and each word's respective counts, equal to the counts of
+     *          generateWordMap(CompressedWordCounter.newReader(file,
+     *          Charset.defaultCharset())) </pre>
+     * @return a map containing all words read and their counts
+     */
+    public static WordCounts generateWordMap(Path file, int workers)
+            throws IOException {
+        assert workers > 0 : "Violation of: workers > 0";
 
-                    // branch for when a word is already in the Map
-                    int currCount = wordCount.get(currWordOrSep);
-                    currCount++;
-                    wordCount.replace(currWordOrSep, currCount);
-                }
-                // makes sure i is set to the position of the next word/separator
-                i += currWordOrSepLen;
-            }
-            // read the next line
-            s = in.readLine();
+        Charset charset = Charset.defaultCharset();
+        boolean compressed = CompressedWordCounter.isCompressed(file);
+        if (!ByteTokenizer.supports(charset)) {
+            return readWithReader(file, charset);
         }
 
+        ByteWordTable table;
+        if (compressed) {
+            table = CompressedWordCounter.countFile(file, charset, workers);
+        } else if (workers == 1) {
+            table = ByteTokenizer.countFile(file, charset);
+        } else {
+            table = ParallelWordCounter.countFile(file, charset, workers);
+        }
+        if (table.hasLengthChangingKey()) {
+            // the reader resumes after such words where the bytes did not
+            return readWithReader(file, charset);
+        }
+        WordCounts wordCount = new WordCounts();
+        table.addTo(wordCount);
         return wordCount;
     }
 
     /**
-     * Takes a map of words and counts, and first sorts it in decreasing
-     * numerical order, then removes the top {@code n} entries and sorts them
-     * alphabetically.
+     * Returns the map of words and counts of {@code file} read with
+     * {@link #generateWordMap(BufferedReader)} through
+     * {@code CompressedWordCounter.newReader}, which decompresses a gzip or
+     * zip file and, like {@code FileReader}, replaces malformed input rather
+     * than failing on it.
+     *
+     * @param file
+     *            path of the input file
+     * @param charset
+     *            charset the input is encoded in
+     * @return a map containing all words read and their counts
+     */
+    static WordCounts readWithReader(Path file, Charset charset)
+            throws IOException {
+        try (BufferedReader in = CompressedWordCounter.newReader(file,
+                charset)) {
+            return generateWordMap(in);
+        }
+    }
+
+    /**
+     * Reads the input file with the tokenizer selected by
+     * {@code TOKENIZER_PROPERTY}, incrementally from the snapshot named by
+     * {@code SNAPSHOT_PROPERTY}, or from the cache named by
+     * {@code CACHE_PROPERTY}, and returns its map of words and counts.
+     *
+     * @param inFile
+     *            name of the input file
+     * @param inputReader
+     *            BufferedReader open on the input file
+     * @return a map containing all words read and their counts
+     */
+    private static WordCounts readWordMap(String inFile,
+            BufferedReader inputReader) throws IOException {
+        String snapshot = System.getProperty(SNAPSHOT_PROPERTY);
+        // a snapshot records byte offsets of plain text
+        if (snapshot != null
+                && !CompressedWordCounter.isCompressed(Paths.get(inFile))) {
+            return WordCountSnapshot.countIncrementally(Paths.get(inFile),
+                    Paths.get(snapshot));
+        }
+        String cache = System.getProperty(CACHE_PROPERTY);
+        if (cache != null) {
+            long budget = Math.max(0, Long.getLong(CACHE_SIZE_PROPERTY, 256));
+            return new WordMapCache(Paths.get(cache), budget << 20).count(
+                    Paths.get(inFile), () -> tokenize(inFile, inputReader));
+        }
+        return tokenize(inFile, inputReader);
+    }
+
+    /**
+     * Reads the input file with the tokenizer selected by
+     * {@code TOKENIZER_PROPERTY}, or decompresses and counts it in a pipeline
+     * if it is gzip or zip compressed, and returns its map of words and
+     * counts.
+     *
+     * @param inFile
+     *            name of the input file
+     * @param inputReader
+     *            BufferedReader open on the input file
+     * @return a map containing all words read and their counts
+     */
+    private static WordCounts tokenize(String inFile,
+            BufferedReader inputReader) throws IOException {
+        String tokenizer = System.getProperty(TOKENIZER_PROPERTY, "reader");
+        if (tokenizer.equals("mapped")
+                || CompressedWordCounter.isCompressed(Paths.get(inFile))) {
+            int workers = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+            return generateWordMap(Paths.get(inFile), workers);
+        }
+        return generateWordMap(inputReader);
+    }
+
+    /**
+     * Takes a map of words and counts, selects the {@code n} entries with the
+     * highest counts, and sorts them alphabetically. Selection keeps a bounded
+     * min-heap of {@code n} entries, so it takes O(|wordMap| log n) time and
+     * O(n) extra memory; words with equal counts are kept in reverse
+     * alphabetical order. From {@code PARALLEL_SORT_THRESHOLD} words on, the
+     * same words are selected by {@code ParallelTopWords} on all cores.
      *
      * @param wordMap
      *            Map containing unique words and the number of their
@@ -205,31 +567,42 @@ public final class TagCloud {
         assert wordMap != null : "Violation of: words is not null";
         assert wordMap.size() > 0 : "Violation of: words is not null";
 
-        Set<Entry<String, Integer>> entries = wordMap.entrySet();
-        List<Entry<String, Integer>> wordList = new LinkedList<>();
+        List<Entry<String, Integer>> wordList = topWords(wordMap, n);
 
-        // collect all map entries into a linked list to allow for sorting
-        for (Iterator<Entry<String, Integer>> it = entries.iterator(); it
-                .hasNext();) {
-            wordList.add(0, it.next());
-        }
+        // clear the rest of the word map
+        wordMap.clear();
 
-        // sort by decreasing word frequency (counts)
-        Comparator<Entry<String, Integer>> countOrder = new CountOrder();
-        Collections.sort(wordList, countOrder);
+        return wordList;
+    }
+
+    /**
+     * Returns the {@code n} entries of {@code wordMap} that {@code sort}
+     * selects, sorted alphabetically, without clearing {@code wordMap}.
+     *
+     * @param wordMap
+     *            map of words and counts
+     * @param n
+     *            number of words to select
+     * @return the selected words sorted alphabetically
+     * @requires n > 0
+     */
+    static List<Entry<String, Integer>> topWords(Map<String, Integer> wordMap,
+            int n) {
+        assert n > 0 : "Violation of: n > 0";
 
-        // strip all words after (n-1)'th word from wordList
-        while (wordList.size() > n) {
-            wordList.remove(n);
+        if (Math.min(n, wordMap.size()) >= PARALLEL_SORT_THRESHOLD) {
+            return ParallelTopWords.select(wordMap, n);
         }
 
+        // select the n words with the highest counts
+        TopWordSelector top = new TopWordSelector(n);
+        top.offerAll(wordMap);
+        List<Entry<String, Integer>> wordList = top.toList();
+
         // sort alphabetically A-Z
         Comparator<Entry<String, Integer>> alphabetOrder = new WordOrder();
         Collections.sort(wordList, alphabetOrder);
 
-        // clear the rest of the word map
-        wordMap.clear();
-
         return wordList;
     }
 
@@ -264,6 +637,41 @@ public final class TagCloud {
     public static void populateCloud(String inputFile,
             List<Map.Entry<String, Integer>> sortedWords, PrintWriter html, 
             final int minFontSize, final int maxFontSize) {
+        populateCloud(inputFile, sortedWords, html, minFontSize, maxFontSize,
+                null);
+    }
+
+    /**
+     * Writes all of the sorted words in the given {@code List} to the HTML
+     * output like {@link #populateCloud(String, List, PrintWriter, int, int)},
+     * additionally showing in each word's tooltip the most its (approximate)
+     * count may exceed the true count.
+     *
+     * @param inputFile
+     *            {@code String} containing name of the input file
+     * @param sortedWords
+     *            {@code List} containing all words and their respective counts,
+     *            sorted alphabetically in order of decreasing counts.
+     * @param html
+     *            {@code PrintWriter} that writes to the html output file.
+     * @param minFontSize
+     *            the smallest font size to be represented in the output
+     * @param maxFontSize
+     *            the largest font size to be represented in the output
+     * @param errors
+     *            error bound of the count of each word, or null if the counts
+     *            are exact
+     * @requires |sortedWords| > 0
+     * @clears sortedWords
+     * @ensures <pre>
+     *          output file is the same as written by populateCloud without
+     *          errors, except that if errors /= null the title of each word
+     *          w also contains errors.get(w) </pre>
+     */
+    public static void populateCloud(String inputFile,
+            List<Map.Entry<String, Integer>> sortedWords, PrintWriter html,
+            final int minFontSize, final int maxFontSize,
+            Map<String, Integer> errors) {
         assert sortedWords.size() > 0 : "Violation of: |sortedWords| > 0";
 
         // determine max and min font sizes in the list of sorted words
@@ -289,10 +697,7 @@ public final class TagCloud {
         html.println("<p class=\"cbox\">");
 
         // add words into html file in sorted order
-        for (int len = sortedWords.size(); len > 0; len--) {
-
-            Map.Entry<String, Integer> p = sortedWords.get(0);
-            sortedWords.remove(0);
+        for (Map.Entry<String, Integer> p : sortedWords) {
             String word = p.getKey();
             int count = p.getValue();
 
@@ -302,10 +707,16 @@ public final class TagCloud {
             // print info to html file
             html.print("<span style=\"cursor:default\" ");
             html.print("class=\"f" + fSize + "\" ");
-            html.print("title=\"count: " + count + "\">");
+            html.print("title=\"count: " + count);
+            if (errors != null) {
+                html.print(" (error &le; " + errors.get(word) + ")");
+            }
+            html.print("\">");
             html.println(word + "</span>");
         }
 
+        sortedWords.clear();
+
         // close all remaining open html tags to end file
         html.println("</p>");
         html.println("</div>");
@@ -313,6 +724,74 @@ public final class TagCloud {
         html.println("</html>");
     }
 
+    /**
+     * Writes the words of the given {@code List}, with real-valued scores
+     * such as the decayed scores of {@code DecayedWordScores}, to the HTML
+     * output like {@link #populateCloud(String, List, PrintWriter, int, int)}
+     * does with counts. Font sizes are scaled between the smallest and
+     * largest score by {@link #calculateFontSize(String, double, double,
+     * double, int, int)}, and each word's tooltip shows its score rounded to
+     * two decimals.
+     *
+     * @param inputFile
+     *            {@code String} containing name of the input file
+     * @param sortedWords
+     *            {@code List} containing words and their respective scores,
+     *            sorted alphabetically
+     * @param html
+     *            {@code PrintWriter} that writes to the html output file.
+     * @param minFontSize
+     *            the smallest font size to be represented in the output
+     * @param maxFontSize
+     *            the largest font size to be represented in the output
+     * @requires |sortedWords| > 0 and every score > 0
+     * @clears sortedWords
+     * @ensures <pre>
+     *          output file contains the same body as written by
+     *          populateCloud, with font sizes scaled between the smallest
+     *          and largest score and the title of each word w equal to
+     *          "score: " followed by the score of w </pre>
+     */
+    public static void populateScoredCloud(String inputFile,
+            List<Map.Entry<String, Double>> sortedWords, PrintWriter html,
+            final int minFontSize, final int maxFontSize) {
+        assert sortedWords.size() > 0 : "Violation of: |sortedWords| > 0";
+
+        double minScore = Double.POSITIVE_INFINITY;
+        double maxScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Double> entry : sortedWords) {
+            minScore = Math.min(minScore, entry.getValue());
+            maxScore = Math.max(maxScore, entry.getValue());
+        }
+
+        html.println("<body>");
+        html.println("<h2>Top " + sortedWords.size() + " words in " + inputFile
+                + ".txt</h2>");
+        html.println("<hr>");
+        html.println("<div class=\"cdiv\">");
+        html.println("<p class=\"cbox\">");
+
+        for (Map.Entry<String, Double> p : sortedWords) {
+            String word = p.getKey();
+            double score = p.getValue();
+            int fSize = calculateFontSize(word, score, minScore, maxScore,
+                    minFontSize, maxFontSize);
+            html.print("<span style=\"cursor:default\" ");
+            html.print("class=\"f" + fSize + "\" ");
+            html.print("title=\"score: "
+                    + String.format(Locale.ROOT, "%.2f", score));
+            html.print("\">");
+            html.println(word + "</span>");
+        }
+
+        sortedWords.clear();
+
+        html.println("</p>");
+        html.println("</div>");
+        html.println("</body>");
+        html.println("</html>");
+    }
+
     /**
      * Given a word and its number of counts, calculates the proper font size
      * that this word should have in the tag cloud. Uses maxCounts and minCounts
@@ -361,6 +840,49 @@ public final class TagCloud {
         return fSize + shift;
     }
 
+    /**
+     * Given a word and its real-valued score, calculates its font size like
+     * {@link #calculateFontSize(String, int, int, int, int, int)} does from
+     * counts, scaling linearly between minScore and maxScore.
+     *
+     * @param word
+     *            the word whose font-size is to be determined
+     * @param score
+     *            the score of the given word
+     * @param minScore
+     *            the minimum score any word will have
+     * @param maxScore
+     *            the maximum score any word will have
+     * @param minFontSize
+     *            the smallest font size to be represented in the output
+     * @param maxFontSize
+     *            the largest font size to be represented in the output
+     * @return the scaled font-size for this word
+     * @requires word is not null and score > 0 and minScore <= maxScore
+     * @ensures <pre>
+     *          minFontSize <= calculateFontSize <= maxFontSize and
+     *          calculateFontSize is proportionate to score weighted
+     *          between minScore and maxScore </pre>
+     */
+    public static int calculateFontSize(String word, double score,
+            double minScore, double maxScore, final int minFontSize,
+            final int maxFontSize) {
+        assert word != null : "Violation of: word is not null";
+        assert score > 0 : "Violation of: score is greater than 0.";
+
+        final int shift = minFontSize - 1;
+
+        // linear normalization, as for counts
+        int fSize = 1;
+        if (score > minScore) {
+            double quotient = (maxFontSize - shift) * (score - minScore)
+                    / (maxScore - minScore);
+            fSize = Math.max(1,
+                    Math.min(maxFontSize - shift, (int) Math.ceil(quotient)));
+        }
+        return fSize + shift;
+    }
+
     /**
      * Writes the HTML header to the output file in given {@code PrintWriter}.
      * Uses numWords and inputFileName to generate HTML title element.
@@ -448,10 +970,11 @@ public final class TagCloud {
         String inFile = in.nextLine();
         userInput[0] = inFile;
 
-        // try to open input file
+        // try to open input file, decompressing it if needed
         BufferedReader reader = null; // null initilization required for compilation
         try {
-            reader = new BufferedReader(new FileReader(inFile));
+            reader = CompressedWordCounter.newReader(Paths.get(inFile),
+                    Charset.defaultCharset());
         } catch (IOException e) {
             System.err.println("Error opening file: " + inFile);
             in.close();
@@ -532,43 +1055,41 @@ public final class TagCloud {
     }
 
     /**
-     * Returns a PrintWriter containing the output file specified in outFile.
-     * Prints error and terminates program if IOException occurs.
+     * Replaces the contents of {@code file} with {@code contents}, encoded in
+     * the default charset like the output of main.
      *
-     * @param outFile
-     *            name of output file
-     * @param inputReader
-     *            input file bytestream
-     * @return PrintWriter containing output file
-     * @ensures <pre>
-     *      if no IOException occurs
-     *          (openOutputFile).isReady
-     *      else
-     *          prints appropriate error message to console and
-     *          inputReader is tried to be closed and
-     *          program is terminated with exit code 1
-     *      </pre>
+     * @param file
+     *            path of the file to replace
+     * @param contents
+     *            new contents of the file
+     * @throws IOException
+     *             if the file cannot be written or renamed
+     * @see #writeFileAtomically(Path, byte[])
      */
-    private static PrintWriter openOutputFile(String outFile,
-            BufferedReader inputReader) {
-
-        // null initialization required for compilation
-        PrintWriter htmlWriter = null;
-
-        try {
-            htmlWriter = new PrintWriter(
-                    new BufferedWriter(new FileWriter(outFile)));
-        } catch (IOException e) {
-            System.err.println("Error creating or opening file: " + outFile);
-            try {
-                inputReader.close();
-            } catch (IOException e2) {
-                System.err.println("Error closing input file");
-            }
-            System.exit(1);
-        }
+    static void writeFileAtomically(Path file, String contents)
+            throws IOException {
+        writeFileAtomically(file, contents.getBytes(Charset.defaultCharset()));
+    }
 
-        return htmlWriter;
+    /**
+     * Replaces the contents of {@code file} with {@code contents}. The
+     * contents are written to a temporary file in the same folder which is
+     * then renamed over {@code file}, so readers of {@code file} never see a
+     * partially written file.
+     *
+     * @param file
+     *            path of the file to replace
+     * @param contents
+     *            new contents of the file
+     * @throws IOException
+     *             if the file cannot be written or renamed
+     */
+    static void writeFileAtomically(Path file, byte[] contents)
+            throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, contents);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
     }
 
     /**
@@ -633,6 +1154,11 @@ public final class TagCloud {
         String txtName;
         int endPrePath = inFile.lastIndexOf("/") + 1;
         int fileTypeIndex = inFile.indexOf(".txt");
+        if (fileTypeIndex < 0) {
+            // e.g. "data/corpus.zip" --> "corpus"
+            fileTypeIndex = inFile.lastIndexOf(".") >= endPrePath
+                    ? inFile.lastIndexOf(".") : inFile.length();
+        }
         txtName = inFile.substring(endPrePath, fileTypeIndex);
         
         String[] userPrefs = getUserOutputAndCloudSize(in);
@@ -656,9 +1182,52 @@ public final class TagCloud {
          */
 
         // Read input file and generate word map.
-        Map<String, Integer> wordMap;
+        RunProfile profile = new RunProfile(inFile);
+        profile.begin("generateWordMap");
+        WordCounts wordMap;
+        Map<String, Integer> errors = null;
         try {
-            wordMap = generateWordMap(inputReader);
+            String counterName = System.getProperty(COUNTER_PROPERTY, "exact");
+            long budget = Math.max(1, Long.getLong(MEMORY_PROPERTY, 64)) << 20;
+            int ngram = Integer.getInteger(NGRAM_PROPERTY, 1);
+            if (ngram > 1) {
+                WordCounts words = new WordCounts();
+                NGramCounter counter = new NGramCounter(ngram, words);
+                countWords(inputReader, words, counter);
+                // phrases are only built for the top n-grams
+                wordMap = counter.size() > 0 ? counter.top(numWords)
+                        : new WordCounts();
+                profile.counted(counter.total(), counter.size(),
+                        counter.size());
+            } else if (counterName.equals("approximate")) {
+                ApproximateWordCounter counter = new ApproximateWordCounter(
+                        budget);
+                readWords(inputReader, counter::add);
+                wordMap = counter.toWordCounts();
+                errors = counter.errors();
+                profile.counted(counter.total(), -1, counter.size());
+            } else if (counterName.equals("external")) {
+                Path spillFolder = Paths.get(System.getProperty(SPILL_PROPERTY,
+                        System.getProperty("java.io.tmpdir")));
+                try (ExternalWordCounter counter = new ExternalWordCounter(
+                        budget, spillFolder)) {
+                    readWords(inputReader, counter::add);
+                    // only the top words are needed, and the full vocabulary
+                    // may not fit in memory
+                    wordMap = counter.top(numWords);
+                    profile.counted(counter.total(), counter.distinct(),
+                            counter.peakSize());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                wordMap = readWordMap(inFile, inputReader);
+                long tokens = 0;
+                for (int id = 0; id < wordMap.size(); id++) {
+                    tokens += wordMap.count(id);
+                }
+                profile.counted(tokens, wordMap.size(), wordMap.size());
+            }
         } catch (IOException e) {
             System.err.println("Error reading input file");
             directory.delete();
@@ -675,6 +1244,7 @@ public final class TagCloud {
         }
 
         // determine cloud size based on |wordMap| and numWords
+        profile.begin("determineActualCloudSize");
         int cloudSize = determineActualCloudSize(numWords, wordMap.size());
 
         /*----------------------------------------------------------------------
@@ -682,24 +1252,31 @@ public final class TagCloud {
          */
 
         // sort words by decreasing counts then alphabetically
+        profile.begin("sort");
         List<Map.Entry<String, Integer>> wordList = sort(wordMap, cloudSize);
 
-        // try opening output html file
-        PrintWriter htmlWriter = openOutputFile(outFile, inputReader);
-
         // write output to HTML file
-        writeHeader(txtName, wordList.size(), htmlWriter);
-        populateCloud(txtName, wordList, htmlWriter, smallestFont, largestFont);
-
-        // try opening css file
-        PrintWriter cssWriter = openOutputFile(styleFile, inputReader);
-
-        // write css to style file
-        generateCSS(smallestFont, largestFont, cssWriter);
+        profile.begin("populateCloud");
+        CloudRenderer renderer = new CloudRenderer(smallestFont, largestFont,
+                Charset.defaultCharset());
+        String failedFile = outFile;
+        try {
+            renderer.writeCloud(Paths.get(outFile), txtName, wordList, errors);
 
-        // close resources
-        htmlWriter.close();
-        cssWriter.close();
+            // write css to style file
+            profile.begin("generateCSS");
+            failedFile = styleFile;
+            renderer.writeStylesheet(Paths.get(styleFile));
+        } catch (IOException e) {
+            System.err.println("Error creating or opening file: " + failedFile);
+            try {
+                inputReader.close();
+            } catch (IOException e2) {
+                System.err.println("Error closing input file");
+            }
+            System.exit(1);
+        }
+        profile.end();
         try {
             inputReader.close();
         } catch (IOException e) {
@@ -709,6 +1286,7 @@ public final class TagCloud {
 
         // signal end of program
         System.out.println("Finished writing to " + outFile);
+        profile.emit();
 
     }
 
@@ -0,0 +1,532 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Headless batch mode which generates the tag clouds of many input files in
+ * one process. Each file goes through three stages: reading it into memory
+ * (on a pool of I/O threads), counting, sorting and rendering it (on a fixed
+ * pool with one thread per core), and writing its HTML and CSS (back on the
+ * I/O pool). The number of files in flight is bounded, and the outcome of
+ * every file is reported instead of stopping at the first failure.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudBatch {
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_LARGEST_FONT = 48;
+
+    /**
+     * Number of I/O threads per CPU thread.
+     */
+    private static final int IO_THREADS_PER_CPU_THREAD = 4;
+
+    /**
+     * Number of files in flight per CPU thread.
+     */
+    private static final int FILES_IN_FLIGHT_PER_CPU_THREAD = 2;
+
+    /**
+     * Largest file read into memory by the I/O stage; larger files are
+     * memory-mapped by the counting stage instead.
+     */
+    private static final long MAX_BUFFERED_SIZE = ByteTokenizer.WINDOW_SIZE;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudBatch() {
+    }
+
+    /**
+     * Outcome of generating the tag cloud of one input file.
+     */
+    public static final class Result {
+
+        /**
+         * The input file.
+         */
+        private final Path input;
+
+        /**
+         * The generated HTML file, or null if generation failed.
+         */
+        private Path output;
+
+        /**
+         * Why generation failed, or null if it succeeded.
+         */
+        private String error;
+
+        /**
+         * Wall time spent on this file, in milliseconds.
+         */
+        private long millis;
+
+        /**
+         * Creates the pending result of the given input file.
+         *
+         * @param input
+         *            the input file
+         */
+        Result(Path input) {
+            this.input = input;
+        }
+
+        /**
+         * Returns the input file.
+         *
+         * @return the input file
+         */
+        public Path input() {
+            return this.input;
+        }
+
+        /**
+         * Returns the generated HTML file, or null if generation failed.
+         *
+         * @return the generated HTML file
+         */
+        public Path output() {
+            return this.output;
+        }
+
+        /**
+         * Returns why generation failed, or null if it succeeded.
+         *
+         * @return the error message
+         */
+        public String error() {
+            return this.error;
+        }
+
+        /**
+         * Returns whether the tag cloud was generated.
+         *
+         * @return true iff generation succeeded
+         */
+        public boolean succeeded() {
+            return this.error == null;
+        }
+
+        @Override
+        public String toString() {
+            if (this.succeeded()) {
+                return "OK      " + this.input + " -> " + this.output + " ("
+                        + this.millis + " ms)";
+            }
+            return "FAILED  " + this.input + ": " + this.error;
+        }
+    }
+
+    /**
+     * A file travelling through the stages of the batch.
+     */
+    private static final class Job {
+
+        /**
+         * Result reported for this file.
+         */
+        private final Result result;
+
+        /**
+         * Name of the input file without its extension.
+         */
+        private final String txtName;
+
+        /**
+         * Contents of the input file, or null if it is mapped instead.
+         */
+        private byte[] bytes;
+
+        /**
+         * Rendered HTML of the tag cloud.
+         */
+        private byte[] html;
+
+        /**
+         * Start time of this job, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * Creates a job for the given input file.
+         *
+         * @param input
+         *            the input file
+         */
+        Job(Path input) {
+            this.result = new Result(input);
+            this.txtName = baseName(input);
+        }
+    }
+
+    /**
+     * Returns why {@code e} was thrown, never null: its message, or for a
+     * file system exception (whose message is mostly the file's path) its
+     * reason, or the name of the exception if there is nothing else (as for
+     * {@code NoSuchFileException} or a {@code NullPointerException}).
+     *
+     * @param e
+     *            the exception
+     * @return description of the failure
+     */
+    private static String reason(Throwable e) {
+        if (e instanceof FileSystemException) {
+            String reason = ((FileSystemException) e).getReason();
+            return reason != null ? reason : e.getClass().getSimpleName();
+        }
+        if (e.getMessage() != null) {
+            return e.getMessage();
+        }
+        return String.valueOf(e);
+    }
+
+    /**
+     * Returns the name of the cloud of {@code file}: its file name up to
+     * ".txt" as in {@code TagCloud.main}, so "lesmiz.txt.gz" is "lesmiz", or
+     * else without its extension.
+     *
+     * @param file
+     *            path of a file
+     * @return name of the cloud
+     */
+    static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int end = name.indexOf(".txt");
+        if (end < 0) {
+            end = name.lastIndexOf('.');
+        }
+        return end > 0 ? name.substring(0, end) : name;
+    }
+
+    /**
+     * Returns the input files named by {@code source}: every {@code .txt} file
+     * in it if it is a directory, otherwise every non-blank line of it that
+     * does not start with '#', resolved against the manifest's folder.
+     *
+     * @param source
+     *            input directory or manifest file
+     * @return list of input files
+     * @throws IOException
+     *             if source cannot be read
+     */
+    public static List<Path> listInputs(Path source) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(source,
+                    "*.txt")) {
+                for (Path p : dir) {
+                    inputs.add(p);
+                }
+            }
+            Collections.sort(inputs);
+        } else {
+            Path base = source.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(source)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(base.resolve(line).normalize());
+                }
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Reads the input file of {@code job} into memory if it is small enough,
+     * not compressed, and can be tokenized on its bytes.
+     *
+     * @param job
+     *            the job
+     * @param charset
+     *            charset the input is encoded in
+     * @return the job
+     */
+    private static Job read(Job job, Charset charset) {
+        Path input = job.result.input;
+        try {
+            // compressed inputs are left to TagCloud.generateWordMap, which
+            // decompresses them
+            if (ByteTokenizer.supports(charset)
+                    && Files.size(input) <= MAX_BUFFERED_SIZE
+                    && !CompressedWordCounter.isCompressed(input)) {
+                job.bytes = Files.readAllBytes(input);
+            }
+        } catch (IOException e) {
+            throw new CompletionException(
+                    new IOException("Error opening file: " + input + ": "
+                            + reason(e), e));
+        }
+        return job;
+    }
+
+    /**
+     * Counts, sorts and renders the tag cloud of {@code job}.
+     *
+     * @param job
+     *            the job
+     * @param charset
+     *            charset the input is encoded in
+     * @param numWords
+     *            desired number of words in the cloud
+     * @param renderer
+     *            renderer of the calling thread
+     * @return the job
+     */
+    private static Job render(Job job, Charset charset, int numWords,
+            CloudRenderer renderer) {
+        WordCounts wordMap = new WordCounts();
+        try {
+            if (job.bytes != null) {
+                ByteWordTable table = new ByteWordTable(charset);
+                ByteTokenizer.countWords(ByteBuffer.wrap(job.bytes), 0,
+                        job.bytes.length, table);
+                job.bytes = null;
+                if (table.hasLengthChangingKey()) {
+                    // counted like TagCloud.generateWordMap counts it
+                    wordMap = TagCloud.generateWordMap(job.result.input);
+                } else {
+                    table.addTo(wordMap);
+                }
+            } else {
+                wordMap = TagCloud.generateWordMap(job.result.input);
+            }
+        } catch (IOException e) {
+            throw new CompletionException(new IOException(
+                    "Error reading input file: " + job.result.input + ": "
+                            + reason(e),
+                    e));
+        }
+        if (wordMap.size() <= 0) {
+            throw new CompletionException(
+                    new IOException("No words read from input file"));
+        }
+
+        int cloudSize = Math.min(numWords, wordMap.size());
+        List<Map.Entry<String, Integer>> wordList = TagCloud.sort(wordMap,
+                cloudSize);
+        job.html = renderer.renderCloud(job.txtName, wordList, null);
+        return job;
+    }
+
+    /**
+     * Writes the HTML and CSS of {@code job} into {@code outFolder}.
+     *
+     * @param job
+     *            the job
+     * @param outFolder
+     *            folder the output files are written to
+     * @param css
+     *            encoded contents of the CSS file
+     * @return the job
+     */
+    private static Job write(Job job, Path outFolder, byte[] css) {
+        Path htmlFile = outFolder.resolve(job.txtName + ".html");
+        Path cssFile = outFolder.resolve(job.txtName + ".css");
+        try {
+            Files.write(htmlFile, job.html);
+            Files.write(cssFile, css);
+        } catch (IOException e) {
+            throw new CompletionException(new IOException(
+                    "Error creating or opening file: " + htmlFile + ": "
+                            + reason(e),
+                    e));
+        }
+        job.html = null;
+        job.result.output = htmlFile;
+        return job;
+    }
+
+    /**
+     * Generates the tag cloud of every input file into {@code outFolder},
+     * naming the HTML and CSS files after each input file.
+     *
+     * @param inputs
+     *            input files
+     * @param outFolder
+     *            folder the output files are written to
+     * @param numWords
+     *            desired number of words in each cloud
+     * @param smallestFont
+     *            smallest font to be represented in the output
+     * @param largestFont
+     *            largest font to be represented in the output
+     * @param cpuThreads
+     *            number of threads counting and rendering clouds
+     * @return the result of every input file, in the order of inputs
+     * @throws IOException
+     *             if outFolder cannot be created
+     * @requires <pre>
+     *          numWords > 0 and 0 < smallestFont < largestFont and
+     *          cpuThreads > 0
+     *          </pre>
+     */
+    public static List<Result> buildAll(List<Path> inputs, Path outFolder,
+            int numWords, int smallestFont, int largestFont, int cpuThreads)
+            throws IOException {
+        assert numWords > 0 : "Violation of: numWords > 0";
+        assert 0 < smallestFont : "Violation of: 0 < smallestFont";
+        assert smallestFont < largestFont : "Violation of: smallestFont < largestFont";
+        assert cpuThreads > 0 : "Violation of: cpuThreads > 0";
+
+        Files.createDirectories(outFolder);
+        Charset charset = Charset.defaultCharset();
+
+        // renderers keep a buffer, so each CPU thread gets its own; the
+        // stylesheet only depends on the font range
+        ThreadLocal<CloudRenderer> renderers = ThreadLocal
+                .withInitial(() -> new CloudRenderer(smallestFont, largestFont,
+                        charset));
+        byte[] css = renderers.get().stylesheet();
+
+        ExecutorService ioPool = Executors
+                .newFixedThreadPool(cpuThreads * IO_THREADS_PER_CPU_THREAD);
+        ExecutorService cpuPool = Executors.newFixedThreadPool(cpuThreads);
+        Semaphore inFlight = new Semaphore(
+                cpuThreads * FILES_IN_FLIGHT_PER_CPU_THREAD);
+        List<Result> results = new ArrayList<>();
+        List<CompletableFuture<Job>> pending = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try {
+            for (Path input : inputs) {
+                Job job = new Job(input);
+                results.add(job.result);
+                if (!names.add(job.txtName)) {
+                    job.result.error = "Another input already writes "
+                            + job.txtName + ".html";
+                    continue;
+                }
+
+                inFlight.acquireUninterruptibly();
+                pending.add(CompletableFuture
+                        .supplyAsync(() -> read(job, charset), ioPool)
+                        .thenApplyAsync(j -> render(j, charset, numWords,
+                                renderers.get()), cpuPool)
+                        .thenApplyAsync(j -> write(j, outFolder, css), ioPool)
+                        .whenComplete((j, e) -> {
+                            if (e != null) {
+                                Throwable cause = e;
+                                if (cause instanceof CompletionException
+                                        && cause.getCause() != null) {
+                                    cause = cause.getCause();
+                                }
+                                // a failure must never read as success
+                                job.result.error = reason(cause);
+                            }
+                            job.result.millis = (System.nanoTime() - job.start)
+                                    / 1_000_000;
+                            inFlight.release();
+                        }));
+            }
+            for (CompletableFuture<Job> f : pending) {
+                try {
+                    f.join();
+                } catch (CompletionException e) {
+                    // already recorded in the file's result
+                }
+            }
+        } finally {
+            ioPool.shutdown();
+            cpuPool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Main method. Usage:
+     *
+     * <pre>
+     * java TagCloudBatch &lt;input folder or manifest&gt; &lt;output folder&gt; &lt;number of words&gt;
+     *         [&lt;smallest font&gt; &lt;largest font&gt;] [&lt;threads&gt;]
+     * </pre>
+     *
+     * Exits with status 1 if any cloud could not be generated.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 5 && args.length != 6) {
+            System.err.println("Usage: java TagCloudBatch <input folder or "
+                    + "manifest> <output folder> <number of words> "
+                    + "[<smallest font> <largest font>] [<threads>]");
+            System.exit(2);
+        }
+
+        int smallestFont = DEFAULT_SMALLEST_FONT;
+        int largestFont = DEFAULT_LARGEST_FONT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int numWords;
+        try {
+            numWords = Integer.parseInt(args[2]);
+            if (args.length >= 5) {
+                smallestFont = Integer.parseInt(args[3]);
+                largestFont = Integer.parseInt(args[4]);
+            }
+            if (args.length == 6) {
+                threads = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (numWords <= 0 || smallestFont <= 0 || smallestFont >= largestFont
+                || threads <= 0) {
+            System.err.println("Number of words and threads must be positive, "
+                    + "and 0 < smallest font < largest font.");
+            System.exit(2);
+        }
+
+        List<Result> results;
+        try {
+            List<Path> inputs = listInputs(Paths.get(args[0]));
+            results = buildAll(inputs, Paths.get(args[1]), numWords,
+                    smallestFont, largestFont, threads);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        int succeeded = 0;
+        for (Result r : results) {
+            System.out.println(r);
+            if (r.succeeded()) {
+                succeeded++;
+            }
+        }
+        System.out.println("Finished " + succeeded + " of " + results.size()
+                + " tag clouds.");
+        if (succeeded < results.size()) {
+            System.exit(1);
+        }
+    }
+
+}
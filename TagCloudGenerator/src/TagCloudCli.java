@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headless command-line entry point which generates the tag clouds of the
+ * given input files without any prompts, e.g.
+ *
+ * <pre>
+ * java -jar tagcloud.jar output/docs 100 data/alice.txt data/lesmiz.txt
+ * </pre>
+ *
+ * Each input file gets an HTML and a CSS file named after it in the output
+ * folder, which is created if needed; existing files are replaced. Unlike
+ * {@code TagCloudBatch}, the files are generated one after the other on the
+ * calling thread, and as few classes as possible are loaded, since a job
+ * launching the generator once per small document mostly pays for JVM
+ * startup. {@code build-cli.sh} packages this class as an executable jar
+ * with a class-data-sharing archive to cut that startup further.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudCli {
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_LARGEST_FONT = 48;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: java -jar tagcloud.jar "
+            + "[--min <smallest font>] [--max <largest font>] "
+            + "<output folder> <number of words> <input file>...";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudCli() {
+    }
+
+    /**
+     * Generates the tag cloud of {@code input} into {@code outFolder}.
+     *
+     * @param input
+     *            the input file
+     * @param outFolder
+     *            folder the output files are written to
+     * @param numWords
+     *            desired number of words in the cloud
+     * @param renderer
+     *            renderer of the cloud
+     * @return the generated HTML file
+     * @throws IOException
+     *             if the input cannot be read, has no words, or the output
+     *             cannot be written
+     */
+    static Path generate(Path input, Path outFolder, int numWords,
+            CloudRenderer renderer) throws IOException {
+        Map<String, Integer> wordMap = TagCloud.generateWordMap(input);
+        if (wordMap.size() <= 0) {
+            throw new IOException("No words read from input file: " + input);
+        }
+        List<Map.Entry<String, Integer>> wordList = TagCloud.sort(wordMap,
+                Math.min(numWords, wordMap.size()));
+
+        String name = TagCloudBatch.baseName(input);
+        Path htmlFile = outFolder.resolve(name + ".html");
+        renderer.writeCloud(htmlFile, name, wordList, null);
+        renderer.writeStylesheet(outFolder.resolve(name + ".css"));
+        return htmlFile;
+    }
+
+    /**
+     * Main method. Exits with status 2 on invalid arguments and with status 1
+     * if any cloud could not be generated.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        int smallestFont = DEFAULT_SMALLEST_FONT;
+        int largestFont = DEFAULT_LARGEST_FONT;
+        int i = 0;
+        try {
+            while (i + 1 < args.length && args[i].startsWith("--")) {
+                if (args[i].equals("--min")) {
+                    smallestFont = Integer.parseInt(args[i + 1]);
+                } else if (args[i].equals("--max")) {
+                    largestFont = Integer.parseInt(args[i + 1]);
+                } else {
+                    System.err.println(USAGE);
+                    System.exit(2);
+                }
+                i += 2;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+        }
+        if (args.length - i < 3) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        Path outFolder = Paths.get(args[i]);
+        int numWords = 0;
+        try {
+            numWords = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+        }
+        if (numWords <= 0 || smallestFont <= 0
+                || smallestFont >= largestFont) {
+            System.err.println("Number of words must be positive, and "
+                    + "0 < smallest font < largest font.");
+            System.exit(2);
+        }
+
+        try {
+            Files.createDirectories(outFolder);
+        } catch (IOException e) {
+            System.err.println("Error creating output folder: " + outFolder);
+            System.exit(1);
+        }
+        CloudRenderer renderer = new CloudRenderer(smallestFont, largestFont,
+                Charset.defaultCharset());
+        boolean failed = false;
+        for (int k = i + 2; k < args.length; k++) {
+            Path input = Paths.get(args[k]);
+            try {
+                Path htmlFile = generate(input, outFolder, numWords, renderer);
+                System.out.println("Finished writing to " + htmlFile);
+            } catch (IOException e) {
+                System.err.println("Error: " + input + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+}
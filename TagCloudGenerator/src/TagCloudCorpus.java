@@ -0,0 +1,588 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Headless corpus mode which generates the cloud of every document of a
+ * folder with its words weighted by TF-IDF rather than by their counts, so
+ * that the words every document uses ("the", "and", "of") give way to the
+ * words that set each document apart. The score of word w in document d is
+ * count(w, d) * ln(N / df(w)), where N is the number of documents and df(w)
+ * the number of documents w occurs in; words occurring in every document
+ * score 0 and are left out.
+ *
+ * <p>
+ * Documents are hashed and counted on a fixed pool of threads, and their
+ * vocabularies are then merged into the document frequencies in one pass.
+ * The frequencies are kept in the output folder along with the
+ * {@code WordMapCache.key} of every document merged into them. When documents
+ * were only added since the last run, only the new ones are counted and
+ * merged, and only their clouds (and any missing ones) are generated; the
+ * other clouds keep the weights of the run that generated them. When a
+ * document was changed or removed, or the saved frequencies are damaged,
+ * every document is counted again and every cloud is regenerated.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudCorpus {
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_LARGEST_FONT = 48;
+
+    /**
+     * Name of the file in the output folder holding the document frequencies.
+     */
+    static final String FREQUENCIES_NAME = "corpus.df";
+
+    /**
+     * Magic number at the start of the document frequencies ("TCDF").
+     */
+    private static final int MAGIC = 0x54434446;
+
+    /**
+     * Version of the document frequencies format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloudCorpus() {
+    }
+
+    /**
+     * Document frequencies of a corpus: the number of documents each word
+     * occurs in, and the keys of the documents counted into them.
+     */
+    static final class Frequencies {
+
+        /**
+         * Number of documents counted with each {@code WordMapCache.key}.
+         */
+        private final Map<String, Integer> keys;
+
+        /**
+         * Number of documents counted that have words; an empty document
+         * does not make every word rarer.
+         */
+        private int documents;
+
+        /**
+         * Number of documents each word occurs in.
+         */
+        private final WordCounts counts;
+
+        /**
+         * Creates the document frequencies of an empty corpus.
+         */
+        Frequencies() {
+            this(new HashMap<>(), 0, new WordCounts());
+        }
+
+        /**
+         * Creates document frequencies.
+         *
+         * @param keys
+         *            number of documents counted with each key
+         * @param documents
+         *            number of documents with words
+         * @param counts
+         *            number of documents each word occurs in
+         */
+        private Frequencies(Map<String, Integer> keys, int documents,
+                WordCounts counts) {
+            this.keys = keys;
+            this.documents = documents;
+            this.counts = counts;
+        }
+
+        /**
+         * Returns the number of documents with words counted.
+         *
+         * @return number of documents
+         */
+        int documents() {
+            return this.documents;
+        }
+
+        /**
+         * Returns the number of documents counted with each key.
+         *
+         * @return number of documents by key
+         */
+        Map<String, Integer> keys() {
+            return this.keys;
+        }
+
+        /**
+         * Adds a document to the corpus.
+         *
+         * @param key
+         *            {@code WordMapCache.key} of the document
+         * @param wordCounts
+         *            word counts of the document
+         * @updates this
+         */
+        void add(String key, WordCounts wordCounts) {
+            this.keys.merge(key, 1, Integer::sum);
+            if (wordCounts.size() > 0) {
+                this.documents++;
+            }
+            for (int id = 0; id < wordCounts.size(); id++) {
+                if (wordCounts.count(id) > 0) {
+                    this.counts.add(wordCounts.word(id), 1);
+                }
+            }
+        }
+
+        /**
+         * Returns the TF-IDF score of a word occurring {@code count} times in
+         * a document of the corpus.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            number of occurrences of word in the document
+         * @return count * ln(documents / df(word))
+         * @requires word occurs in a document of the corpus
+         */
+        double score(String word, int count) {
+            int df = this.counts.count(word);
+            assert df > 0 : "Violation of: word occurs in the corpus";
+            return count * Math.log((double) this.documents / df);
+        }
+
+        /**
+         * Writes these document frequencies to {@code file}, replacing it in
+         * one step.
+         *
+         * @param file
+         *            file to write
+         * @throws IOException
+         *             if the file cannot be written
+         */
+        void write(Path file) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(bytes, crc))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeUTF(Charset.defaultCharset().name());
+                out.writeUTF(WordCountSnapshot.localeTag());
+                WordCountSnapshot.writeVarLong(out, this.keys.size());
+                for (Map.Entry<String, Integer> e : this.keys.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    WordCountSnapshot.writeVarLong(out, e.getValue());
+                }
+                WordCountSnapshot.writeVarLong(out, this.documents);
+                WordCountSnapshot.writeCounts(out, this.counts);
+                out.flush();
+                // checksum of everything above, itself not checksummed
+                out.writeInt((int) crc.getValue());
+            }
+            TagCloud.writeFileAtomically(file, bytes.toByteArray());
+        }
+
+        /**
+         * Reads the document frequencies written to {@code file}, or returns
+         * null if there are none, they are damaged (in any way, so that the
+         * corpus is counted again), or their words were decoded or lowercased
+         * differently than they would be now.
+         *
+         * @param file
+         *            file to read
+         * @return the document frequencies, or null
+         * @throws IOException
+         *             if the file exists but cannot be read
+         */
+        static Frequencies read(Path file) throws IOException {
+            return WordCountSnapshot.readChecked(file, in -> {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION
+                        || !in.readUTF()
+                                .equals(Charset.defaultCharset().name())
+                        || !in.readUTF()
+                                .equals(WordCountSnapshot.localeTag())) {
+                    return null;
+                }
+                int n = WordCountSnapshot.readVarInt(in);
+                Map<String, Integer> keys = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    String key = in.readUTF();
+                    keys.put(key, WordCountSnapshot.readVarInt(in));
+                }
+                int documents = WordCountSnapshot.readVarInt(in);
+                WordCounts counts = WordCountSnapshot.readCounts(in);
+                return new Frequencies(keys, documents, counts);
+            });
+        }
+    }
+
+    /**
+     * Returns whether word1 with score1 ranks below word2 with score2: by
+     * score, and words with equal scores in alphabetical order.
+     *
+     * @param word1
+     *            first word
+     * @param score1
+     *            score of the first word
+     * @param word2
+     *            second word
+     * @param score2
+     *            score of the second word
+     * @return true iff the first word ranks lower
+     */
+    private static boolean ranksBelow(String word1, double score1,
+            String word2, double score2) {
+        if (score1 != score2) {
+            return score1 < score2;
+        }
+        return word1.compareTo(word2) < 0;
+    }
+
+    /**
+     * Returns the {@code n} words of a document of the corpus with the
+     * highest positive TF-IDF scores, sorted alphabetically, with their
+     * scores. Of the words with equal scores the alphabetically last are
+     * selected, as {@code TopWordSelector} does with counts.
+     *
+     * @param wordCounts
+     *            word counts of the document
+     * @param frequencies
+     *            document frequencies of the corpus
+     * @param n
+     *            number of words to select
+     * @return the selected words and their scores
+     * @requires n > 0 and the document is part of the corpus
+     */
+    static List<Map.Entry<String, Double>> topScores(WordCounts wordCounts,
+            Frequencies frequencies, int n) {
+        assert n > 0 : "Violation of: n > 0";
+
+        PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<>(n,
+                (e1, e2) -> ranksBelow(e1.getKey(), e1.getValue(), e2.getKey(),
+                        e2.getValue()) ? -1 : 1);
+        for (int id = 0; id < wordCounts.size(); id++) {
+            int count = wordCounts.count(id);
+            if (count <= 0) {
+                continue;
+            }
+            String word = wordCounts.word(id);
+            double score = frequencies.score(word, count);
+            if (score <= 0) {
+                continue;
+            }
+            if (heap.size() < n) {
+                heap.add(new AbstractMap.SimpleEntry<>(word, score));
+            } else if (ranksBelow(heap.peek().getKey(), heap.peek().getValue(),
+                    word, score)) {
+                heap.poll();
+                heap.add(new AbstractMap.SimpleEntry<>(word, score));
+            }
+        }
+        List<Map.Entry<String, Double>> top = new ArrayList<>(heap);
+        top.sort(Map.Entry.comparingByKey());
+        return top;
+    }
+
+    /**
+     * Runs every task on {@code pool} and returns their results, in order.
+     *
+     * @param <T>
+     *            type of the results
+     * @param pool
+     *            pool to run the tasks on
+     * @param tasks
+     *            the tasks
+     * @return the result of every task
+     * @throws IOException
+     *             if a task failed
+     */
+    private static <T> List<T> runAll(ExecutorService pool,
+            List<Callable<T>> tasks) throws IOException {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while counting");
+        }
+    }
+
+    /**
+     * Generates the TF-IDF clouds of the documents {@code inputs} in
+     * {@code outFolder}, counting only the documents added since the last run
+     * if no document was changed or removed since.
+     *
+     * @param inputs
+     *            the documents of the corpus
+     * @param outFolder
+     *            folder to write the clouds and document frequencies to
+     * @param numWords
+     *            number of words in each cloud
+     * @param smallestFont
+     *            smallest font to be represented in the output
+     * @param largestFont
+     *            largest font to be represented in the output
+     * @param threads
+     *            number of threads counting documents and rendering clouds
+     * @return the HTML file written for every cloud generated, by input, or
+     *         null for an input with no word scoring above 0, in the order of
+     *         inputs
+     * @throws IOException
+     *             if a document cannot be read, two documents have the same
+     *             name, or the output cannot be written
+     * @requires <pre>
+     *          numWords > 0 and 0 < smallestFont < largestFont and
+     *          threads > 0
+     *          </pre>
+     */
+    public static Map<Path, Path> buildAll(List<Path> inputs, Path outFolder,
+            int numWords, int smallestFont, int largestFont, int threads)
+            throws IOException {
+        assert numWords > 0 : "Violation of: numWords > 0";
+        assert 0 < smallestFont : "Violation of: 0 < smallestFont";
+        assert smallestFont < largestFont : "Violation of: smallestFont < largestFont";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        Set<String> names = new HashSet<>();
+        for (Path input : inputs) {
+            String name = TagCloudBatch.baseName(input);
+            if (!names.add(name)) {
+                throw new IOException(
+                        "Another input already writes " + name + ".html");
+            }
+        }
+        Files.createDirectories(outFolder);
+        Charset charset = Charset.defaultCharset();
+        CloudRenderer renderer = new CloudRenderer(smallestFont, largestFont,
+                charset);
+        byte[] css = renderer.stylesheet();
+        Path frequenciesFile = outFolder.resolve(FREQUENCIES_NAME);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<String>> hashing = new ArrayList<>();
+            for (Path input : inputs) {
+                hashing.add(() -> WordMapCache.key(input));
+            }
+            List<String> keys = runAll(pool, hashing);
+
+            // documents whose key was not merged before are new; if a key
+            // merged before is left over, a document was changed or removed
+            Frequencies frequencies = Frequencies.read(frequenciesFile);
+            boolean[] added = new boolean[inputs.size()];
+            if (frequencies != null) {
+                Map<String, Integer> left = new HashMap<>(frequencies.keys());
+                for (int i = 0; i < inputs.size(); i++) {
+                    Integer n = left.remove(keys.get(i));
+                    if (n == null) {
+                        added[i] = true;
+                    } else if (n > 1) {
+                        left.put(keys.get(i), n - 1);
+                    }
+                }
+                if (!left.isEmpty()) {
+                    frequencies = null;
+                }
+            }
+            if (frequencies == null) {
+                frequencies = new Frequencies();
+                Arrays.fill(added, true);
+            }
+
+            List<Integer> rendered = new ArrayList<>();
+            List<Callable<WordCounts>> counting = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                if (added[i] || !Files.exists(htmlFile(outFolder, input))) {
+                    rendered.add(i);
+                    counting.add(() -> TagCloud.generateWordMap(input));
+                }
+            }
+            List<WordCounts> counts = runAll(pool, counting);
+
+            // one pass merging the vocabulary of every new document
+            boolean merged = false;
+            for (int j = 0; j < rendered.size(); j++) {
+                int i = rendered.get(j);
+                if (added[i]) {
+                    frequencies.add(keys.get(i), counts.get(j));
+                    merged = true;
+                }
+            }
+            if (merged) {
+                frequencies.write(frequenciesFile);
+            }
+
+            Frequencies corpus = frequencies;
+            List<Callable<Path>> rendering = new ArrayList<>();
+            for (int j = 0; j < rendered.size(); j++) {
+                Path input = inputs.get(rendered.get(j));
+                WordCounts wordCounts = counts.get(j);
+                rendering.add(() -> {
+                    List<Map.Entry<String, Double>> words = topScores(
+                            wordCounts, corpus, numWords);
+                    if (words.isEmpty()) {
+                        return null;
+                    }
+                    String name = TagCloudBatch.baseName(input);
+                    StringWriter html = new StringWriter();
+                    PrintWriter htmlWriter = new PrintWriter(html);
+                    TagCloud.writeHeader(name, words.size(), htmlWriter);
+                    TagCloud.populateScoredCloud(name, words, htmlWriter,
+                            smallestFont, largestFont);
+                    htmlWriter.flush();
+                    Path htmlFile = htmlFile(outFolder, input);
+                    TagCloud.writeFileAtomically(htmlFile,
+                            html.toString().getBytes(charset));
+                    TagCloud.writeFileAtomically(
+                            outFolder.resolve(name + ".css"), css);
+                    return htmlFile;
+                });
+            }
+            List<Path> htmlFiles = runAll(pool, rendering);
+
+            Map<Path, Path> results = new LinkedHashMap<>();
+            for (int j = 0; j < rendered.size(); j++) {
+                results.put(inputs.get(rendered.get(j)), htmlFiles.get(j));
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the HTML file of the cloud of {@code input}.
+     *
+     * @param outFolder
+     *            the output folder
+     * @param input
+     *            a document of the corpus
+     * @return path of its HTML file
+     */
+    private static Path htmlFile(Path outFolder, Path input) {
+        return outFolder.resolve(TagCloudBatch.baseName(input) + ".html");
+    }
+
+    /**
+     * Main method. Usage:
+     *
+     * <pre>
+     * java TagCloudCorpus &lt;input folder or manifest&gt; &lt;output folder&gt; &lt;number of words&gt;
+     *         [&lt;smallest font&gt; &lt;largest font&gt;] [&lt;threads&gt;]
+     * </pre>
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 5 && args.length != 6) {
+            System.err.println("Usage: java TagCloudCorpus <input folder or "
+                    + "manifest> <output folder> <number of words> "
+                    + "[<smallest font> <largest font>] [<threads>]");
+            System.exit(2);
+        }
+
+        int smallestFont = DEFAULT_SMALLEST_FONT;
+        int largestFont = DEFAULT_LARGEST_FONT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int numWords;
+        try {
+            numWords = Integer.parseInt(args[2]);
+            if (args.length >= 5) {
+                smallestFont = Integer.parseInt(args[3]);
+                largestFont = Integer.parseInt(args[4]);
+            }
+            if (args.length == 6) {
+                threads = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (numWords <= 0 || smallestFont <= 0 || smallestFont >= largestFont
+                || threads <= 0) {
+            System.err.println("Number of words and threads must be positive, "
+                    + "and 0 < smallest font < largest font.");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        List<Path> inputs;
+        Map<Path, Path> results;
+        try {
+            inputs = TagCloudBatch.listInputs(Paths.get(args[0]));
+            results = buildAll(inputs, Paths.get(args[1]), numWords,
+                    smallestFont, largestFont, threads);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        int generated = 0;
+        for (Map.Entry<Path, Path> r : results.entrySet()) {
+            if (r.getValue() != null) {
+                System.out.println(r.getKey() + " -> " + r.getValue());
+                generated++;
+            } else {
+                System.out.println(r.getKey()
+                        + ": no words set it apart from the corpus");
+            }
+        }
+        System.out.println("Generated " + generated + " tag clouds from "
+                + inputs.size() + " documents in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+}
@@ -0,0 +1,483 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server generating tag clouds on request, e.g.
+ *
+ * <pre>
+ * GET /cloud?file=data/lesmiz.txt&amp;n=100&amp;min=11&amp;max=48
+ * </pre>
+ *
+ * returns the HTML that {@code TagCloud} would write for the file (relative to
+ * the server's root folder), the top {@code n} words and the font range
+ * {@code [min, max]}. The stylesheet it links to, {@code /<name>.css}, covers
+ * every font size a request may ask for, so it is the same for all clouds.
+ * {@code GET /stats} reports the caches.
+ *
+ * <p>
+ * Two caches avoid repeating work: word counts, keyed by file path,
+ * modification time and size, and rendered HTML, keyed additionally by the
+ * number of words and font range. A request for a new number of words or font
+ * range of a file already counted only selects and renders. Both caches evict
+ * their least recently used entries beyond a size budget.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudServer {
+
+    /**
+     * Smallest font size a request may ask for.
+     */
+    private static final int MIN_FONT = 1;
+
+    /**
+     * Largest font size a request may ask for.
+     */
+    private static final int MAX_FONT = 200;
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_LARGEST_FONT = 48;
+
+    /**
+     * Default number of words.
+     */
+    private static final int DEFAULT_WORDS = 100;
+
+    /**
+     * Folder the requested files are resolved against.
+     */
+    private final Path root;
+
+    /**
+     * Charset of input and output files.
+     */
+    private final Charset charset = Charset.defaultCharset();
+
+    /**
+     * Word counts by file key.
+     */
+    private final LruCache<String, WordCounts> counts;
+
+    /**
+     * Rendered HTML by file key, number of words and font range.
+     */
+    private final LruCache<String, byte[]> html;
+
+    /**
+     * Stylesheet covering every font size from MIN_FONT to MAX_FONT.
+     */
+    private final byte[] css;
+
+    /**
+     * Renderer of each handler thread, replaced when the font range changes.
+     */
+    private final ThreadLocal<CloudRenderer> renderers = new ThreadLocal<>();
+
+    /**
+     * An error answered with an HTTP status.
+     */
+    private static final class HttpError extends Exception {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * HTTP status code.
+         */
+        private final int status;
+
+        /**
+         * Creates an error.
+         *
+         * @param status
+         *            HTTP status code
+         * @param message
+         *            message sent as the body of the response
+         */
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Creates a server of clouds of files under {@code root}.
+     *
+     * @param root
+     *            folder the requested files are resolved against
+     * @param countsBudget
+     *            size budget of the word-count cache in bytes
+     * @param htmlBudget
+     *            size budget of the HTML cache in bytes
+     * @throws IOException
+     *             if root does not exist
+     */
+    private TagCloudServer(Path root, long countsBudget, long htmlBudget)
+            throws IOException {
+        this.root = root.toRealPath();
+        this.counts = new LruCache<>(countsBudget, WordCounts::footprint);
+        this.html = new LruCache<>(htmlBudget, bytes -> bytes.length);
+        this.css = new CloudRenderer(MIN_FONT, MAX_FONT, this.charset)
+                .stylesheet();
+    }
+
+    /**
+     * Parses the query string of a request.
+     *
+     * @param query
+     *            raw query string, or null
+     * @return parameters by name
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(
+                        URLDecoder.decode(pair.substring(0, eq),
+                                StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1),
+                                StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Returns the integer parameter {@code name}, or {@code otherwise} if it
+     * is absent.
+     *
+     * @param params
+     *            parameters of the request
+     * @param name
+     *            name of the parameter
+     * @param otherwise
+     *            default value
+     * @return value of the parameter
+     * @throws HttpError
+     *             if the parameter is not an integer
+     */
+    private static int intParam(Map<String, String> params, String name,
+            int otherwise) throws HttpError {
+        String value = params.get(name);
+        if (value == null) {
+            return otherwise;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Invalid number: " + name + "=" + value);
+        }
+    }
+
+    /**
+     * Resolves a requested file against the root folder.
+     *
+     * @param file
+     *            requested file
+     * @return real path of the file
+     * @throws HttpError
+     *             if the file is outside the root folder or does not exist
+     */
+    private Path resolve(String file) throws HttpError {
+        Path path;
+        try {
+            path = this.root.resolve(file).normalize().toRealPath();
+        } catch (NoSuchFileException e) {
+            throw new HttpError(404, "No such file: " + file);
+        } catch (IOException | RuntimeException e) {
+            throw new HttpError(400, "Invalid file: " + file);
+        }
+        if (!path.startsWith(this.root)) {
+            throw new HttpError(403, "Outside of the served folder: " + file);
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new HttpError(404, "Not a file: " + file);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the renderer of the calling thread for the given font range.
+     *
+     * @param minFontSize
+     *            smallest font size
+     * @param maxFontSize
+     *            largest font size
+     * @return the renderer
+     */
+    private CloudRenderer renderer(int minFontSize, int maxFontSize) {
+        CloudRenderer renderer = this.renderers.get();
+        if (renderer == null || renderer.minFontSize() != minFontSize
+                || renderer.maxFontSize() != maxFontSize) {
+            renderer = new CloudRenderer(minFontSize, maxFontSize,
+                    this.charset);
+            this.renderers.set(renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * Returns the word counts of {@code file}, from the cache if they were
+     * counted since it last changed.
+     *
+     * @param file
+     *            the file
+     * @param key
+     *            cache key of the current version of the file
+     * @return word counts of the file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private WordCounts wordCounts(Path file, String key) throws IOException {
+        WordCounts wordCounts = this.counts.get(key);
+        if (wordCounts == null) {
+            wordCounts = TagCloud.generateWordMap(file);
+            // drop the counts of earlier versions of the file
+            String prefix = file + "\0";
+            this.counts.removeIf(k -> k.startsWith(prefix) && !k.equals(key));
+            this.html.removeIf(k -> k.startsWith(prefix)
+                    && !k.startsWith(key + "\0"));
+            this.counts.put(key, wordCounts);
+        }
+        return wordCounts;
+    }
+
+    /**
+     * Returns the HTML of the cloud requested by {@code params}.
+     *
+     * @param params
+     *            parameters of the request
+     * @param exchange
+     *            the exchange, whose X-Cache header is set
+     * @return encoded HTML of the cloud
+     * @throws HttpError
+     *             if the request is invalid or fails
+     */
+    private byte[] cloud(Map<String, String> params, HttpExchange exchange)
+            throws HttpError {
+        String file = params.get("file");
+        if (file == null) {
+            throw new HttpError(400, "Missing parameter: file");
+        }
+        int n = intParam(params, "n", DEFAULT_WORDS);
+        int min = intParam(params, "min", DEFAULT_SMALLEST_FONT);
+        int max = intParam(params, "max", DEFAULT_LARGEST_FONT);
+        if (n <= 0 || min < MIN_FONT || min >= max || max > MAX_FONT) {
+            throw new HttpError(400, "Need n > 0 and " + MIN_FONT
+                    + " <= min < max <= " + MAX_FONT);
+        }
+
+        Path path = this.resolve(file);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class);
+            String key = path + "\0" + attrs.lastModifiedTime().toMillis()
+                    + "\0" + attrs.size();
+            String htmlKey = key + "\0" + n + "\0" + min + "\0" + max;
+
+            byte[] page = this.html.get(htmlKey);
+            if (page != null) {
+                exchange.getResponseHeaders().set("X-Cache", "hit");
+                return page;
+            }
+            exchange.getResponseHeaders().set("X-Cache", "miss");
+
+            WordCounts wordCounts = this.wordCounts(path, key);
+            if (wordCounts.size() == 0) {
+                throw new HttpError(422, "No words read from " + file);
+            }
+            List<Map.Entry<String, Integer>> words = TagCloud
+                    .topWords(wordCounts, Math.min(n, wordCounts.size()));
+            page = this.renderer(min, max).renderCloud(
+                    TagCloudBatch.baseName(path), words, null);
+            this.html.put(htmlKey, page);
+            return page;
+        } catch (IOException e) {
+            throw new HttpError(500, "Error reading " + file);
+        }
+    }
+
+    /**
+     * Sends a response.
+     *
+     * @param exchange
+     *            the exchange
+     * @param status
+     *            HTTP status code
+     * @param contentType
+     *            type of the body
+     * @param body
+     *            body of the response
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status,
+            String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param exchange
+     *            the exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String textType = "text/plain; charset=UTF-8";
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                throw new HttpError(405, "Only GET is supported");
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/cloud")) {
+                byte[] page = this.cloud(
+                        parseQuery(exchange.getRequestURI().getRawQuery()),
+                        exchange);
+                send(exchange, 200, "text/html; charset=" + this.charset.name(),
+                        page);
+            } else if (path.equals("/stats")) {
+                String stats = "counts " + this.counts.stats() + "\nhtml "
+                        + this.html.stats() + "\n";
+                send(exchange, 200, textType,
+                        stats.getBytes(StandardCharsets.UTF_8));
+            } else if (path.endsWith(".css")) {
+                send(exchange, 200, "text/css; charset=" + this.charset.name(),
+                        this.css);
+            } else {
+                throw new HttpError(404, "Not found: " + path);
+            }
+        } catch (HttpError e) {
+            send(exchange, e.status, textType,
+                    (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Main method. Usage:
+     *
+     * <pre>
+     * java TagCloudServer [--port &lt;port&gt;] [--host &lt;address&gt;]
+     *         [--root &lt;folder&gt;] [--threads &lt;T&gt;]
+     *         [--counts-mb &lt;M&gt;] [--html-mb &lt;M&gt;]
+     * </pre>
+     *
+     * The server listens on the loopback address unless {@code --host} says
+     * otherwise.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: java TagCloudServer [--port <port>] "
+                + "[--host <address>] [--root <folder>] [--threads <T>] "
+                + "[--counts-mb <M>] [--html-mb <M>]";
+        if (args.length % 2 != 0) {
+            System.err.println(usage);
+            System.exit(2);
+        }
+
+        int port = 8080;
+        String host = null;
+        Path root = Paths.get(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        long countsMb = 256;
+        long htmlMb = 64;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--host":
+                        host = args[i + 1];
+                        break;
+                    case "--root":
+                        root = Paths.get(args[i + 1]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--counts-mb":
+                        countsMb = Long.parseLong(args[i + 1]);
+                        break;
+                    case "--html-mb":
+                        htmlMb = Long.parseLong(args[i + 1]);
+                        break;
+                    default:
+                        System.err.println(usage);
+                        System.exit(2);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (threads <= 0 || countsMb < 0 || htmlMb < 0) {
+            System.err.println("Threads must be positive and cache sizes "
+                    + "not negative.");
+            System.exit(2);
+        }
+
+        try {
+            TagCloudServer server = new TagCloudServer(root, countsMb << 20,
+                    htmlMb << 20);
+            InetAddress address = host == null
+                    ? InetAddress.getLoopbackAddress()
+                    : InetAddress.getByName(host);
+            HttpServer http = HttpServer
+                    .create(new InetSocketAddress(address, port), 0);
+            http.createContext("/", server::handle);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            http.setExecutor(pool);
+            http.start();
+            System.out.println("Serving clouds of " + server.root + " on http://"
+                    + address.getHostAddress() + ":"
+                    + http.getAddress().getPort() + "/cloud?file=...");
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
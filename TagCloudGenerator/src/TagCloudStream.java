@@ -0,0 +1,327 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming mode which counts the words of text piped into standard input and
+ * keeps a tag cloud of them up to date while the text arrives, e.g.
+ *
+ * <pre>
+ * tail -F access.log | java TagCloudStream output/live 100
+ * </pre>
+ *
+ * The HTML file is rewritten every {@code --lines} lines and every
+ * {@code --millis} milliseconds (if anything changed), and once more when the
+ * input ends. Each rewrite goes through a temporary file that is renamed over
+ * the HTML file. The top words are maintained as the counts change, so the
+ * cost of a rewrite depends only on the size of the cloud, not on how much
+ * text has been read.
+ *
+ * <p>
+ * With {@code --half-life <T>}, the cloud shows what is trending instead of
+ * all-time counts: each word has a score that every occurrence raises by 1
+ * and that halves every {@code T} milliseconds ({@code DecayedWordScores}),
+ * words whose score drops below {@code --threshold} are forgotten, and the
+ * cloud is rewritten on every tick so that the scores shown stay current.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudStream {
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int LARGEST_FONT = 48;
+
+    /**
+     * Default number of lines between rewrites.
+     */
+    private static final int DEFAULT_LINES = 10000;
+
+    /**
+     * Default number of milliseconds between rewrites.
+     */
+    private static final long DEFAULT_MILLIS = 1000;
+
+    /**
+     * Default score below which a word is forgotten with
+     * {@code --half-life}.
+     */
+    private static final double DEFAULT_THRESHOLD = 0.05;
+
+    /**
+     * Word counts of the stream so far, indexed by their top words.
+     */
+    private final TopWordIndex top;
+
+    /**
+     * Decayed scores of the stream, or null if the cloud shows counts.
+     */
+    private final DecayedWordScores scores;
+
+    /**
+     * Number of words in the cloud.
+     */
+    private final int numWords;
+
+    /**
+     * Name the cloud is titled with.
+     */
+    private final String name;
+
+    /**
+     * HTML file rewritten with the cloud.
+     */
+    private final Path htmlFile;
+
+    /**
+     * Renderer of the cloud, only used by one thread at a time.
+     */
+    private final CloudRenderer renderer = new CloudRenderer(SMALLEST_FONT,
+            LARGEST_FONT, Charset.defaultCharset());
+
+    /**
+     * Number of changes to the counts so far.
+     */
+    private long version = 0;
+
+    /**
+     * Value of {@code version} at the last rewrite.
+     */
+    private long renderedVersion = -1;
+
+    /**
+     * Creates a stream cloud of the {@code n} top words written to
+     * {@code outFolder/name.html}.
+     *
+     * @param outFolder
+     *            folder of the output files
+     * @param name
+     *            name of the cloud
+     * @param n
+     *            number of words in the cloud
+     * @param scores
+     *            decayed scores to rank the words by, or null to rank them by
+     *            their counts
+     */
+    private TagCloudStream(Path outFolder, String name, int n,
+            DecayedWordScores scores) {
+        this.top = new TopWordIndex(n);
+        this.scores = scores;
+        this.numWords = n;
+        this.name = name;
+        this.htmlFile = outFolder.resolve(name + ".html");
+    }
+
+    /**
+     * Counts the words of one line of the stream.
+     *
+     * @param line
+     *            the line
+     */
+    private synchronized void count(String line) {
+        if (this.scores != null) {
+            this.scores.advance(System.currentTimeMillis());
+            TagCloud.forEachWord(line, this.scores::add);
+        } else {
+            TagCloud.forEachWord(line, this.top::increment);
+        }
+        this.version++;
+    }
+
+    /**
+     * Rewrites the HTML file if the counts changed since the last rewrite.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void render() throws IOException {
+        if (this.scores != null) {
+            this.renderScores();
+            return;
+        }
+        List<Map.Entry<String, Integer>> words;
+        synchronized (this) {
+            if (this.version == this.renderedVersion || this.top.size() == 0) {
+                return;
+            }
+            this.renderedVersion = this.version;
+            words = this.top.toSortedList();
+        }
+
+        TagCloud.writeFileAtomically(this.htmlFile,
+                this.renderer.renderCloud(this.name, words, null));
+    }
+
+    /**
+     * Rewrites the HTML file with the words of highest decayed score, even if
+     * no words arrived since the last rewrite, since their scores decayed.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void renderScores() throws IOException {
+        List<Map.Entry<String, Double>> words;
+        synchronized (this) {
+            if (this.scores.size() == 0) {
+                return;
+            }
+            this.scores.advance(System.currentTimeMillis());
+            words = this.scores.top(this.numWords);
+        }
+
+        StringWriter html = new StringWriter();
+        PrintWriter htmlWriter = new PrintWriter(html);
+        TagCloud.writeHeader(this.name, words.size(), htmlWriter);
+        TagCloud.populateScoredCloud(this.name, words, htmlWriter,
+                SMALLEST_FONT, LARGEST_FONT);
+        htmlWriter.flush();
+        TagCloud.writeFileAtomically(this.htmlFile,
+                html.toString().getBytes(Charset.defaultCharset()));
+    }
+
+    /**
+     * Rewrites the HTML file, reporting rather than throwing errors.
+     */
+    private void renderQuietly() {
+        try {
+            this.render();
+        } catch (IOException e) {
+            System.err.println("Error writing " + this.htmlFile + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Main method. Usage:
+     *
+     * <pre>
+     * java TagCloudStream &lt;output folder&gt; &lt;number of words&gt;
+     *         [--name &lt;name&gt;] [--lines &lt;K&gt;] [--millis &lt;T&gt;]
+     *         [--half-life &lt;T&gt;] [--threshold &lt;S&gt;]
+     * </pre>
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: java TagCloudStream <output folder> "
+                + "<number of words> [--name <name>] [--lines <K>] "
+                + "[--millis <T>] [--half-life <T>] [--threshold <S>]";
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println(usage);
+            System.exit(2);
+        }
+
+        String name = "stdin";
+        int numWords;
+        int lines = DEFAULT_LINES;
+        long millis = DEFAULT_MILLIS;
+        double halfLife = 0;
+        double threshold = DEFAULT_THRESHOLD;
+        try {
+            numWords = Integer.parseInt(args[1]);
+            for (int i = 2; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--name":
+                        name = args[i + 1];
+                        break;
+                    case "--lines":
+                        lines = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--millis":
+                        millis = Long.parseLong(args[i + 1]);
+                        break;
+                    case "--half-life":
+                        halfLife = Double.parseDouble(args[i + 1]);
+                        if (!(halfLife > 0)) {
+                            System.err.println("Numbers must be positive.");
+                            System.exit(2);
+                        }
+                        break;
+                    case "--threshold":
+                        threshold = Double.parseDouble(args[i + 1]);
+                        if (!(threshold >= 0)) {
+                            System.err.println(
+                                    "The threshold must not be negative.");
+                            System.exit(2);
+                        }
+                        break;
+                    default:
+                        System.err.println(usage);
+                        System.exit(2);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (numWords <= 0 || lines <= 0 || millis <= 0) {
+            System.err.println("Numbers must be positive.");
+            System.exit(2);
+        }
+
+        Path outFolder = Paths.get(args[0]);
+        DecayedWordScores scores = halfLife > 0
+                ? new DecayedWordScores(halfLife, threshold,
+                        System.currentTimeMillis())
+                : null;
+        TagCloudStream stream = new TagCloudStream(outFolder, name, numWords,
+                scores);
+        ScheduledExecutorService timer = Executors
+                .newSingleThreadScheduledExecutor();
+        try {
+            // the stylesheet never changes, so it is written once
+            Files.createDirectories(outFolder);
+            TagCloud.writeFileAtomically(outFolder.resolve(name + ".css"),
+                    stream.renderer.stylesheet());
+
+            timer.scheduleWithFixedDelay(stream::renderQuietly, millis, millis,
+                    TimeUnit.MILLISECONDS);
+
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in));
+            int sinceRender = 0;
+            String line = in.readLine();
+            while (line != null) {
+                stream.count(line);
+                if (++sinceRender == lines) {
+                    sinceRender = 0;
+                    timer.execute(stream::renderQuietly);
+                }
+                line = in.readLine();
+            }
+
+            timer.shutdown();
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+            stream.render();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+        }
+        System.out.println("Finished writing to " + stream.htmlFile);
+    }
+
+}
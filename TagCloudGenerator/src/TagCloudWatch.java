@@ -0,0 +1,462 @@
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon mode which keeps the tag clouds of every {@code .txt} file of an
+ * input folder current in an output folder, e.g.
+ *
+ * <pre>
+ * java TagCloudWatch docs output/docs 100
+ * </pre>
+ *
+ * At startup, every input whose HTML and CSS files are missing or older than
+ * the input is generated. From then on the input folder is watched with a
+ * {@code WatchService}: the events of a file are debounced until none has
+ * arrived for {@code QUIET_MILLIS}, so a file being written in many small
+ * steps is only generated once it is complete. A file whose modification time
+ * and size are unchanged is skipped, and so is one whose contents hash to the
+ * same {@code WordMapCache.key} as when its cloud was last generated (e.g. a
+ * file that was only touched). Changed files are counted, sorted and
+ * rendered on a fixed pool of worker threads, never more than once at a
+ * time each, and their HTML and CSS files are replaced atomically, so a
+ * browser never sees a partial cloud. The cloud of a deleted input is
+ * deleted.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TagCloudWatch {
+
+    /**
+     * Default smallest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_SMALLEST_FONT = 11;
+
+    /**
+     * Default largest font size, as used by {@code TagCloud.main}.
+     */
+    private static final int DEFAULT_LARGEST_FONT = 48;
+
+    /**
+     * Milliseconds without events after which a changed file is generated.
+     */
+    private static final long QUIET_MILLIS = 200;
+
+    /**
+     * Pattern of the input files in the input folder.
+     */
+    private static final String INPUT_GLOB = "*.txt";
+
+    /**
+     * Contents of an input file as of the last time its cloud was generated.
+     */
+    private static final class Version {
+
+        /**
+         * Modification time, in milliseconds.
+         */
+        private final long modified;
+
+        /**
+         * Size, in bytes.
+         */
+        private final long size;
+
+        /**
+         * {@code WordMapCache.key} of the contents, or null if the cloud was
+         * found up to date at startup and the file was not read.
+         */
+        private final String key;
+
+        /**
+         * Creates a version.
+         *
+         * @param modified
+         *            modification time, in milliseconds
+         * @param size
+         *            size, in bytes
+         * @param key
+         *            key of the contents, or null
+         */
+        Version(long modified, long size, String key) {
+            this.modified = modified;
+            this.size = size;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Folder whose input files are watched.
+     */
+    private final Path inFolder;
+
+    /**
+     * Folder the output files are written to.
+     */
+    private final Path outFolder;
+
+    /**
+     * Desired number of words in each cloud.
+     */
+    private final int numWords;
+
+    /**
+     * Encoded contents of the CSS file of every cloud.
+     */
+    private final byte[] css;
+
+    /**
+     * Renderer of each worker thread.
+     */
+    private final ThreadLocal<CloudRenderer> renderers;
+
+    /**
+     * Version of every input whose cloud is current.
+     */
+    private final Map<Path, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Inputs being generated by a worker.
+     */
+    private final Set<Path> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Inputs with events not yet handled, with the time of the last event in
+     * milliseconds; only used by the watching thread.
+     */
+    private final Map<Path, Long> pending = new HashMap<>();
+
+    /**
+     * Creates a watcher of the clouds of {@code inFolder}.
+     *
+     * @param inFolder
+     *            folder whose input files are watched
+     * @param outFolder
+     *            folder the output files are written to
+     * @param numWords
+     *            desired number of words in each cloud
+     * @param smallestFont
+     *            smallest font to be represented in the output
+     * @param largestFont
+     *            largest font to be represented in the output
+     * @requires numWords > 0 and 0 < smallestFont < largestFont
+     */
+    private TagCloudWatch(Path inFolder, Path outFolder, int numWords,
+            int smallestFont, int largestFont) {
+        this.inFolder = inFolder;
+        this.outFolder = outFolder;
+        this.numWords = numWords;
+        Charset charset = Charset.defaultCharset();
+        this.renderers = ThreadLocal.withInitial(
+                () -> new CloudRenderer(smallestFont, largestFont, charset));
+        this.css = this.renderers.get().stylesheet();
+    }
+
+    /**
+     * Returns the HTML file of the cloud of {@code input}.
+     *
+     * @param input
+     *            the input file
+     * @return its HTML file
+     */
+    private Path htmlFile(Path input) {
+        return this.outFolder
+                .resolve(TagCloudBatch.baseName(input) + ".html");
+    }
+
+    /**
+     * Returns the CSS file of the cloud of {@code input}.
+     *
+     * @param input
+     *            the input file
+     * @return its CSS file
+     */
+    private Path cssFile(Path input) {
+        return this.outFolder
+                .resolve(TagCloudBatch.baseName(input) + ".css");
+    }
+
+    /**
+     * Returns whether {@code file} is named like an input file.
+     *
+     * @param file
+     *            path of a file in the input folder
+     * @return true iff file is an input file
+     */
+    private static boolean isInput(Path file) {
+        return file.getFileName().toString().endsWith(".txt");
+    }
+
+    /**
+     * Lists the input folder and marks every input whose cloud is missing or
+     * older than the input as pending; the others are recorded as current.
+     *
+     * @throws IOException
+     *             if the input folder cannot be listed
+     */
+    private void scan() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(
+                this.inFolder, INPUT_GLOB)) {
+            for (Path input : dir) {
+                Path html = this.htmlFile(input);
+                try {
+                    long modified = Files.getLastModifiedTime(input)
+                            .toMillis();
+                    if (Files.exists(this.cssFile(input)) && Files.exists(html)
+                            && Files.getLastModifiedTime(html)
+                                    .toMillis() >= modified) {
+                        // keep the key of a version already known
+                        this.versions.putIfAbsent(input, new Version(modified,
+                                Files.size(input), null));
+                        continue;
+                    }
+                } catch (IOException e) {
+                    // let the worker report it
+                }
+                this.versions.remove(input);
+                this.pending.put(input, now - QUIET_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Brings the cloud of {@code input} up to date, on a worker thread.
+     *
+     * @param input
+     *            the input file
+     */
+    private void update(Path input) {
+        long start = System.nanoTime();
+        try {
+            if (!Files.exists(input)) {
+                this.versions.remove(input);
+                boolean deleted = Files.deleteIfExists(this.htmlFile(input));
+                deleted |= Files.deleteIfExists(this.cssFile(input));
+                if (deleted) {
+                    System.out.println("Removed " + this.htmlFile(input));
+                }
+                return;
+            }
+
+            long modified = Files.getLastModifiedTime(input).toMillis();
+            long size = Files.size(input);
+            Version old = this.versions.get(input);
+            if (old != null && old.modified == modified && old.size == size) {
+                return;
+            }
+            String key = WordMapCache.key(input);
+            if (old != null && key.equals(old.key)) {
+                // the cloud is still current -- mark it so for the next start
+                Files.setLastModifiedTime(this.htmlFile(input),
+                        FileTime.fromMillis(System.currentTimeMillis()));
+                this.versions.put(input, new Version(modified, size, key));
+                return;
+            }
+
+            WordCounts wordMap = TagCloud.generateWordMap(input);
+            if (wordMap.size() <= 0) {
+                throw new IOException("No words read from input file");
+            }
+            List<Map.Entry<String, Integer>> wordList = TagCloud.sort(wordMap,
+                    Math.min(this.numWords, wordMap.size()));
+            byte[] html = this.renderers.get().renderCloud(
+                    TagCloudBatch.baseName(input), wordList, null);
+            TagCloud.writeFileAtomically(this.htmlFile(input), html);
+            TagCloud.writeFileAtomically(this.cssFile(input), this.css);
+            this.versions.put(input, new Version(modified, size, key));
+            System.out.println("Updated " + input + " -> "
+                    + this.htmlFile(input) + " ("
+                    + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        } catch (IOException e) {
+            this.versions.remove(input);
+            System.err.println("FAILED  " + input + ": " + e.getMessage());
+        } finally {
+            this.running.remove(input);
+        }
+    }
+
+    /**
+     * Hands every pending input whose last event is at least
+     * {@code QUIET_MILLIS} old to {@code workers}, except inputs still being
+     * generated, which stay pending until their worker is done.
+     *
+     * @param workers
+     *            pool of worker threads
+     * @return milliseconds until the next pending input is due, or -1 if
+     *         none is pending
+     */
+    private long dispatch(ExecutorService workers) {
+        long now = System.currentTimeMillis();
+        long wait = -1;
+        Iterator<Map.Entry<Path, Long>> it = this.pending.entrySet()
+                .iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            long due = e.getValue() + QUIET_MILLIS - now;
+            if (due <= 0 && this.running.add(e.getKey())) {
+                Path input = e.getKey();
+                it.remove();
+                workers.execute(() -> this.update(input));
+            } else {
+                due = Math.max(due, QUIET_MILLIS);
+                wait = wait < 0 ? due : Math.min(wait, due);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Generates the outdated clouds and keeps the clouds current until the
+     * input folder is deleted or the thread is interrupted.
+     *
+     * @param threads
+     *            number of worker threads
+     * @throws IOException
+     *             if the input folder cannot be watched or listed, or the
+     *             output folder cannot be created
+     * @throws InterruptedException
+     *             if interrupted while waiting for events
+     * @requires threads > 0
+     */
+    private void run(int threads) throws IOException, InterruptedException {
+        Files.createDirectories(this.outFolder);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (WatchService watcher = this.inFolder.getFileSystem()
+                .newWatchService()) {
+            // register before listing, so that no change falls in between
+            this.inFolder.register(watcher, ENTRY_CREATE, ENTRY_MODIFY,
+                    ENTRY_DELETE);
+            this.scan();
+            System.out.println("Watching " + this.inFolder + " ("
+                    + (this.versions.size() + this.pending.size())
+                    + " inputs, " + this.pending.size() + " outdated)");
+
+            boolean watching = true;
+            while (watching) {
+                long wait = this.dispatch(workers);
+                WatchKey key;
+                if (wait < 0) {
+                    key = watcher.take();
+                } else {
+                    key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+                }
+                long now = System.currentTimeMillis();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            // events were lost -- look at every input again
+                            this.scan();
+                            for (Path input : this.versions.keySet()) {
+                                this.pending.put(input, now);
+                            }
+                        } else {
+                            Path input = this.inFolder
+                                    .resolve((Path) event.context());
+                            if (isInput(input)) {
+                                this.pending.put(input, now);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("No longer watching "
+                                + this.inFolder);
+                        watching = false;
+                    }
+                    key = watcher.poll();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed while waiting, as when shutting down
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Main method. Usage:
+     *
+     * <pre>
+     * java TagCloudWatch &lt;input folder&gt; &lt;output folder&gt; &lt;number of words&gt;
+     *         [&lt;smallest font&gt; &lt;largest font&gt;] [&lt;threads&gt;]
+     * </pre>
+     *
+     * Runs until interrupted, or until the input folder is deleted.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 5 && args.length != 6) {
+            System.err.println("Usage: java TagCloudWatch <input folder> "
+                    + "<output folder> <number of words> "
+                    + "[<smallest font> <largest font>] [<threads>]");
+            System.exit(2);
+        }
+
+        int smallestFont = DEFAULT_SMALLEST_FONT;
+        int largestFont = DEFAULT_LARGEST_FONT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int numWords;
+        try {
+            numWords = Integer.parseInt(args[2]);
+            if (args.length >= 5) {
+                smallestFont = Integer.parseInt(args[3]);
+                largestFont = Integer.parseInt(args[4]);
+            }
+            if (args.length == 6) {
+                threads = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (numWords <= 0 || smallestFont <= 0 || smallestFont >= largestFont
+                || threads <= 0) {
+            System.err.println("Number of words and threads must be positive, "
+                    + "and 0 < smallest font < largest font.");
+            System.exit(2);
+        }
+        Path inFolder = Paths.get(args[0]);
+        if (!Files.isDirectory(inFolder)) {
+            System.err.println("Not a folder: " + inFolder);
+            System.exit(2);
+        }
+
+        try {
+            new TagCloudWatch(inFolder, Paths.get(args[1]), numWords,
+                    smallestFont, largestFont).run(threads);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the {@code n} highest-ranked words of a {@code WordCounts}, kept up
+ * to date as the counts grow, so that a cloud of them can be read at any time
+ * without running {@code TagCloud.sort} over (and clearing) the whole map.
+ * Words rank like {@code TagCloud.sort} ranks them: by decreasing count, and
+ * words with equal counts in reverse alphabetical order.
+ *
+ * <p>
+ * The ids of the top words are kept in a min-heap along with the position of
+ * every id in the heap, so a counted word already in the index is sifted in
+ * place, a word whose count is below {@link #threshold()} is rejected after
+ * one comparison, and each increment costs O(log n) at most. Reading the
+ * index never touches the rest of the vocabulary: the alphabetical order of
+ * the indexed words is kept from one read to the next, so a read costs O(n)
+ * unless words entered the index since the last one, when they are sorted
+ * again in O(n log n).
+ *
+ * <p>
+ * Counts must only grow, and only through this index, since it is not told
+ * about changes made to the counts directly.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class TopWordIndex {
+
+    /**
+     * Initial length of {@code pos}.
+     */
+    private static final int INITIAL_IDS = 1 << 10;
+
+    /**
+     * Counts being indexed.
+     */
+    private final WordCounts counts;
+
+    /**
+     * Ids of the top words; the lowest-ranked one is at index 0.
+     */
+    private final int[] heap;
+
+    /**
+     * Number of ids in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * Position in the heap of every id, or -1 if not in the heap.
+     */
+    private int[] pos = new int[INITIAL_IDS];
+
+    /**
+     * Ids of the indexed words in alphabetical order, as of the last read.
+     */
+    private int[] sorted = new int[0];
+
+    /**
+     * Whether words entered the index since {@code sorted} was computed.
+     */
+    private boolean membersChanged = true;
+
+    /**
+     * Creates an index of the {@code n} top words of empty counts.
+     *
+     * @param n
+     *            number of words to index
+     * @requires n > 0
+     */
+    public TopWordIndex(int n) {
+        this(new WordCounts(), n);
+    }
+
+    /**
+     * Creates an index of the {@code n} top words of {@code counts}, which
+     * from then on must only be changed through this index.
+     *
+     * @param counts
+     *            counts to index
+     * @param n
+     *            number of words to index
+     * @requires n > 0
+     */
+    public TopWordIndex(WordCounts counts, int n) {
+        assert counts != null : "Violation of: counts is not null";
+        assert n > 0 : "Violation of: n > 0";
+
+        this.counts = counts;
+        this.heap = new int[n];
+        Arrays.fill(this.pos, -1);
+        for (int id = 0; id < counts.size(); id++) {
+            this.update(id);
+        }
+    }
+
+    /**
+     * Returns the counts being indexed, which must not be changed directly.
+     *
+     * @return the counts
+     */
+    public WordCounts counts() {
+        return this.counts;
+    }
+
+    /**
+     * Returns the number of words in the index, min(n, |counts|).
+     *
+     * @return number of words indexed
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the count a word needs to enter the full index (it also needs
+     * to follow the lowest-ranked word alphabetically if it only ties it), or
+     * 0 if the index is not full yet.
+     *
+     * @return lowest count in the index
+     */
+    public int threshold() {
+        if (this.size < this.heap.length) {
+            return 0;
+        }
+        return this.counts.count(this.heap[0]);
+    }
+
+    /**
+     * Adds one occurrence of {@code word} and updates the index.
+     *
+     * @param word
+     *            word to count
+     * @return id of word in {@code counts()}
+     * @updates this
+     */
+    public int increment(String word) {
+        int id = this.counts.increment(word);
+        this.update(id);
+        return id;
+    }
+
+    /**
+     * Adds one occurrence of the word held in {@code chars[from, to)},
+     * converted to lowercase as {@link WordCounts#increment(char[], int, int)}
+     * does, and updates the index.
+     *
+     * @param chars
+     *            array holding the word
+     * @param from
+     *            index of the first char of the word
+     * @param to
+     *            index one past the last char of the word
+     * @return id of the word in {@code counts()}
+     * @requires 0 <= from <= to <= |chars|
+     * @updates this
+     */
+    public int increment(char[] chars, int from, int to) {
+        int id = this.counts.increment(chars, from, to);
+        this.update(id);
+        return id;
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code word} and updates the index.
+     *
+     * @param word
+     *            word to count
+     * @param count
+     *            number of occurrences to add
+     * @return id of word in {@code counts()}
+     * @requires count >= 0
+     * @updates this
+     */
+    public int add(String word, int count) {
+        assert count >= 0 : "Violation of: count >= 0";
+        int id = this.counts.add(word, count);
+        this.update(id);
+        return id;
+    }
+
+    /**
+     * Returns whether word id1 ranks below word id2.
+     *
+     * @param id1
+     *            first id
+     * @param id2
+     *            second id
+     * @return true iff id1 ranks lower
+     */
+    private boolean ranksBelow(int id1, int id2) {
+        int c1 = this.counts.count(id1);
+        int c2 = this.counts.count(id2);
+        if (c1 != c2) {
+            return c1 < c2;
+        }
+        return this.counts.word(id1).compareTo(this.counts.word(id2)) < 0;
+    }
+
+    /**
+     * Places {@code id} at heap position {@code i}.
+     *
+     * @param i
+     *            heap position
+     * @param id
+     *            word id
+     */
+    private void place(int i, int id) {
+        this.heap[i] = id;
+        this.pos[id] = i;
+    }
+
+    /**
+     * Updates the index after the count of word {@code id} grew (or the word
+     * was added).
+     *
+     * @param id
+     *            id of the word
+     */
+    private void update(int id) {
+        if (id >= this.pos.length) {
+            int old = this.pos.length;
+            this.pos = Arrays.copyOf(this.pos, Math.max(id + 1, old * 2));
+            Arrays.fill(this.pos, old, this.pos.length, -1);
+        }
+
+        int i = this.pos[id];
+        if (i < 0) {
+            if (this.size < this.heap.length) {
+                i = this.size++;
+                // sift the new word up from the bottom
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!this.ranksBelow(id, this.heap[parent])) {
+                        break;
+                    }
+                    this.place(i, this.heap[parent]);
+                    i = parent;
+                }
+                this.place(i, id);
+                this.membersChanged = true;
+                return;
+            }
+            if (!this.ranksBelow(this.heap[0], id)) {
+                return;
+            }
+            // replace the lowest-ranked word
+            this.pos[this.heap[0]] = -1;
+            this.membersChanged = true;
+            i = 0;
+        }
+
+        // the word ranks higher than before -- sift it down
+        int half = this.size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < this.size
+                    && this.ranksBelow(this.heap[right], this.heap[child])) {
+                child = right;
+            }
+            if (!this.ranksBelow(this.heap[child], id)) {
+                break;
+            }
+            this.place(i, this.heap[child]);
+            i = child;
+        }
+        this.place(i, id);
+    }
+
+    /**
+     * Returns the indexed words and their counts sorted alphabetically, the
+     * list {@code TagCloud.sort(counts(), n)} would return, without changing
+     * the counts.
+     *
+     * @return list of the top words
+     */
+    public List<Map.Entry<String, Integer>> toSortedList() {
+        if (this.membersChanged) {
+            // sort the words themselves, then find their ids again
+            String[] words = new String[this.size];
+            for (int i = 0; i < this.size; i++) {
+                words[i] = this.counts.word(this.heap[i]);
+            }
+            Arrays.sort(words);
+            this.sorted = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                this.sorted[i] = this.counts.indexOf(words[i]);
+            }
+            this.membersChanged = false;
+        }
+        List<Map.Entry<String, Integer>> list = new ArrayList<>(this.size);
+        for (int id : this.sorted) {
+            list.add(new AbstractMap.SimpleEntry<>(this.counts.word(id),
+                    this.counts.count(id)));
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,193 @@
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@code n} highest-ranked words out of a stream of (word, count)
+ * pairs using a bounded min-heap, in O(log n) time per pair and O(n) memory.
+ * Words rank by decreasing count, and words with equal counts rank in reverse
+ * alphabetical order, which is the order {@code TagCloud.sort} has always cut
+ * the cloud at.
+ *
+ * @author Austin Hendricks
+ *
+ */
+final class TopWordSelector {
+
+    /**
+     * Maximum number of words kept.
+     */
+    private final int n;
+
+    /**
+     * Words in the heap; the lowest-ranked kept word is at index 0.
+     */
+    private final String[] words;
+
+    /**
+     * Counts in the heap, parallel to {@code words}.
+     */
+    private final int[] counts;
+
+    /**
+     * Number of words currently in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * Creates a selector keeping the {@code n} highest-ranked words.
+     *
+     * @param n
+     *            number of words to keep
+     * @requires n > 0
+     */
+    TopWordSelector(int n) {
+        assert n > 0 : "Violation of: n > 0";
+        this.n = n;
+        this.words = new String[n];
+        this.counts = new int[n];
+    }
+
+    /**
+     * Returns the number of words selected so far.
+     *
+     * @return number of words selected
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether (word1, count1) ranks below (word2, count2).
+     *
+     * @param word1
+     *            first word
+     * @param count1
+     *            count of the first word
+     * @param word2
+     *            second word
+     * @param count2
+     *            count of the second word
+     * @return true iff the first pair ranks lower
+     */
+    private static boolean ranksBelow(String word1, int count1, String word2,
+            int count2) {
+        if (count1 != count2) {
+            return count1 < count2;
+        }
+        return word1.compareTo(word2) < 0;
+    }
+
+    /**
+     * Returns whether a word with count {@code count} could enter the
+     * selection, so that callers can skip building words that cannot.
+     *
+     * @param count
+     *            count of the word
+     * @return true iff offering a word with count may change the selection
+     */
+    boolean admits(int count) {
+        return this.size < this.n || count >= this.counts[0];
+    }
+
+    /**
+     * Offers a word and its count to the selector.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     * @requires word is not offered twice
+     * @updates this
+     */
+    void offer(String word, int count) {
+        if (this.size < this.n) {
+            // heap not yet full -- sift the new word up from the bottom
+            int i = this.size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!ranksBelow(word, count, this.words[parent],
+                        this.counts[parent])) {
+                    break;
+                }
+                this.words[i] = this.words[parent];
+                this.counts[i] = this.counts[parent];
+                i = parent;
+            }
+            this.words[i] = word;
+            this.counts[i] = count;
+        } else if (count >= this.counts[0]
+                && ranksBelow(this.words[0], this.counts[0], word, count)) {
+            // replace the lowest-ranked word and sift the new one down
+            this.siftDown(word, count);
+        }
+    }
+
+    /**
+     * Places (word, count) at the root and sifts it down to restore the heap.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            its count
+     */
+    private void siftDown(String word, int count) {
+        int i = 0;
+        int half = this.size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < this.size && ranksBelow(this.words[right],
+                    this.counts[right], this.words[child],
+                    this.counts[child])) {
+                child = right;
+            }
+            if (!ranksBelow(this.words[child], this.counts[child], word,
+                    count)) {
+                break;
+            }
+            this.words[i] = this.words[child];
+            this.counts[i] = this.counts[child];
+            i = child;
+        }
+        this.words[i] = word;
+        this.counts[i] = count;
+    }
+
+    /**
+     * Offers every word and count of {@code wordMap} to the selector.
+     *
+     * @param wordMap
+     *            map of words and counts
+     * @updates this
+     */
+    void offerAll(Map<String, Integer> wordMap) {
+        if (wordMap instanceof WordCounts) {
+            // walk the primitive arrays rather than boxing an entry per word
+            WordCounts wordCounts = (WordCounts) wordMap;
+            for (int id = 0; id < wordCounts.size(); id++) {
+                this.offer(wordCounts.word(id), wordCounts.count(id));
+            }
+        } else {
+            for (Map.Entry<String, Integer> entry : wordMap.entrySet()) {
+                this.offer(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the selected words and their counts, in no particular order.
+     *
+     * @return list of the selected entries
+     */
+    List<Map.Entry<String, Integer>> toList() {
+        List<Map.Entry<String, Integer>> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            list.add(new AbstractMap.SimpleEntry<>(this.words[i],
+                    this.counts[i]));
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,585 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of the word counts of a prefix of an append-only
+ * input file, used to count only the bytes appended since the last run.
+ *
+ * <p>
+ * A snapshot holds the length of the consumed prefix of the input, checksums
+ * of the first and last (up to) {@code CHECK_SIZE} bytes of that prefix, the
+ * charset and locale the words were decoded and lowercased with, and the
+ * words sorted alphabetically, each front-coded against the previous word and
+ * followed by its count, all as variable-length integers. A CRC-32 of the
+ * whole snapshot is stored at its end.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class WordCountSnapshot {
+
+    /**
+     * Magic number at the start of every snapshot ("TCWS").
+     */
+    private static final int MAGIC = 0x54435753;
+
+    /**
+     * Version of the snapshot format; version 1 snapshots may hold words
+     * that lowercase to another length, counted unlike the reader counts
+     * them.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Number of bytes at each end of the consumed prefix that are checked to
+     * detect an input that was rewritten rather than appended to.
+     */
+    static final int CHECK_SIZE = 1 << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private WordCountSnapshot() {
+    }
+
+    /**
+     * Writes {@code value} as an unsigned variable-length integer: 7 bits per
+     * byte, least significant group first, high bit set on all but the last
+     * byte.
+     *
+     * @param out
+     *            stream to write to
+     * @param value
+     *            value to write
+     * @throws IOException
+     *             if the stream cannot be written
+     * @requires value >= 0
+     */
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by
+     * {@link #writeVarLong(OutputStream, long)}.
+     *
+     * @param in
+     *            stream to read from
+     * @return the value read
+     * @throws IOException
+     *             if the stream cannot be read or ends early
+     */
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated variable-length integer");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Reads an unsigned variable-length integer that must fit in an
+     * {@code int}.
+     *
+     * @param in
+     *            stream to read from
+     * @return the value read
+     * @throws IOException
+     *             if the stream cannot be read or the value is too large
+     */
+    static int readVarInt(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Variable-length integer out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes the words and counts of {@code wordCounts} sorted alphabetically,
+     * each word front-coded against the previous one.
+     *
+     * @param out
+     *            stream to write to
+     * @param wordCounts
+     *            words and counts to write
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    static void writeCounts(OutputStream out, WordCounts wordCounts)
+            throws IOException {
+        String[] words = new String[wordCounts.size()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = wordCounts.word(id);
+        }
+        Arrays.sort(words);
+
+        writeVarLong(out, words.length);
+        String prev = "";
+        for (String word : words) {
+            writeWord(out, prev, word);
+            writeVarLong(out, wordCounts.count(word));
+            prev = word;
+        }
+    }
+
+    /**
+     * Writes {@code word} front-coded against {@code prev}: the length of the
+     * prefix they share, the length of the rest of word, and the chars of the
+     * rest of word.
+     *
+     * @param out
+     *            stream to write to
+     * @param prev
+     *            previously written word, or "" if none
+     * @param word
+     *            word to write
+     * @throws IOException
+     *             if the stream cannot be written
+     */
+    static void writeWord(OutputStream out, String prev, String word)
+            throws IOException {
+        int shared = 0;
+        int max = Math.min(prev.length(), word.length());
+        while (shared < max && prev.charAt(shared) == word.charAt(shared)) {
+            shared++;
+        }
+        writeVarLong(out, shared);
+        writeVarLong(out, word.length() - shared);
+        for (int i = shared; i < word.length(); i++) {
+            writeVarLong(out, word.charAt(i));
+        }
+    }
+
+    /**
+     * Reads words and counts written by
+     * {@link #writeCounts(OutputStream, WordCounts)}.
+     *
+     * @param in
+     *            stream to read from
+     * @return the words and counts read
+     * @throws IOException
+     *             if the stream cannot be read or is malformed
+     */
+    static WordCounts readCounts(InputStream in) throws IOException {
+        WordCounts wordCounts = new WordCounts();
+        int n = readVarInt(in);
+        char[] word = new char[64];
+        int len = 0;
+        for (int k = 0; k < n; k++) {
+            int shared = readVarInt(in);
+            int suffix = readVarInt(in);
+            if (shared > len || suffix > Integer.MAX_VALUE - shared) {
+                throw new IOException("Malformed front-coded word");
+            }
+            len = shared + suffix;
+            if (len > word.length) {
+                word = Arrays.copyOf(word, Math.max(len, word.length * 2));
+            }
+            for (int i = shared; i < len; i++) {
+                word[i] = (char) readVarInt(in);
+            }
+            wordCounts.add(new String(word, 0, len), readVarInt(in));
+        }
+        return wordCounts;
+    }
+
+    /**
+     * Parser of the body of a checksummed file.
+     *
+     * @param <T>
+     *            type of the parsed contents
+     */
+    @FunctionalInterface
+    interface Parser<T> {
+
+        /**
+         * Parses the body of a file.
+         *
+         * @param in
+         *            stream over the body, without its checksum
+         * @return the parsed contents, or null if they do not apply (e.g.
+         *         they were written with another charset)
+         * @throws IOException
+         *             if the body is malformed
+         */
+        T parse(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Reads {@code file}, which ends with the CRC-32 of everything before it
+     * as snapshots, word map cache entries and document frequencies do, and
+     * parses the rest with {@code parser}. A file that is missing, does not
+     * match its checksum, or cannot be parsed is treated the same way: null is
+     * returned, so that the caller counts again and rewrites it.
+     *
+     * @param <T>
+     *            type of the parsed contents
+     * @param file
+     *            file to read
+     * @param parser
+     *            parser of the body, which reads nothing but its stream
+     * @return the parsed contents, or null if there are none usable
+     * @throws IOException
+     *             if the file exists but cannot be read
+     */
+    static <T> T readChecked(Path file, Parser<T> parser) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        int length = bytes.length - Integer.BYTES;
+        if (length < 0) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        if (ByteBuffer.wrap(bytes, length, Integer.BYTES)
+                .getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        try {
+            return parser.parse(new DataInputStream(
+                    new ByteArrayInputStream(bytes, 0, length)));
+        } catch (IOException e) {
+            // the body is in memory, so this can only be a malformed body
+            return null;
+        }
+    }
+
+    /**
+     * Returns the CRC-32C of bytes {@code [from, to)} of the given channel.
+     *
+     * @param channel
+     *            channel to read
+     * @param from
+     *            position of the first byte
+     * @param to
+     *            position one past the last byte
+     * @return checksum of the bytes
+     * @throws IOException
+     *             if the channel cannot be read
+     */
+    private static long checksum(FileChannel channel, long from, long to)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        long pos = from;
+        while (pos < to) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), to - pos));
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                throw new EOFException("Input ended at position " + pos);
+            }
+            buf.flip();
+            crc.update(buf);
+            pos += n;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the checksum of the first {@code CHECK_SIZE} bytes of
+     * {@code [0, length)}.
+     *
+     * @param channel
+     *            channel of the input
+     * @param length
+     *            length of the prefix
+     * @return checksum of the head of the prefix
+     * @throws IOException
+     *             if the channel cannot be read
+     */
+    private static long headChecksum(FileChannel channel, long length)
+            throws IOException {
+        return checksum(channel, 0, Math.min(length, CHECK_SIZE));
+    }
+
+    /**
+     * Returns the checksum of the last {@code CHECK_SIZE} bytes of
+     * {@code [0, length)}.
+     *
+     * @param channel
+     *            channel of the input
+     * @param length
+     *            length of the prefix
+     * @return checksum of the tail of the prefix
+     * @throws IOException
+     *             if the channel cannot be read
+     */
+    private static long tailChecksum(FileChannel channel, long length)
+            throws IOException {
+        return checksum(channel, Math.max(0, length - CHECK_SIZE), length);
+    }
+
+    /**
+     * Returns the position just past the last separator in
+     * {@code [from, to)} of the channel, or {@code from} if there is none.
+     *
+     * @param channel
+     *            channel of the input
+     * @param from
+     *            position to stop looking at
+     * @param to
+     *            position to start looking back from
+     * @return position of the end of the last complete word
+     * @throws IOException
+     *             if the channel cannot be read
+     */
+    private static long lastBoundary(FileChannel channel, long from, long to)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        long end = to;
+        while (end > from) {
+            int len = (int) Math.min(buf.capacity(), end - from);
+            buf.clear();
+            buf.limit(len);
+            int n = 0;
+            while (n < len) {
+                int r = channel.read(buf, end - len + n);
+                if (r <= 0) {
+                    throw new EOFException("Input ended early");
+                }
+                n += r;
+            }
+            for (int i = len - 1; i >= 0; i--) {
+                if (ByteTokenizer.isSeparator(buf.get(i))) {
+                    return end - len + i + 1;
+                }
+            }
+            end -= len;
+        }
+        return from;
+    }
+
+    /**
+     * Returns the name of the locale words are lowercased in.
+     *
+     * @return current default locale tag
+     */
+    static String localeTag() {
+        return Locale.getDefault().toLanguageTag();
+    }
+
+    /**
+     * Saves a snapshot of {@code wordCounts}, the counts of the first
+     * {@code consumed} bytes of the input, replacing {@code snapshot}
+     * atomically.
+     *
+     * @param snapshot
+     *            path of the snapshot file
+     * @param wordCounts
+     *            counts of the consumed prefix
+     * @param channel
+     *            channel of the input
+     * @param consumed
+     *            length of the consumed prefix
+     * @param charset
+     *            charset the input was decoded with
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    private static void save(Path snapshot, WordCounts wordCounts,
+            FileChannel channel, long consumed, Charset charset)
+            throws IOException {
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(tmp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(charset.name());
+            out.writeUTF(localeTag());
+            writeVarLong(out, consumed);
+            out.writeLong(headChecksum(channel, consumed));
+            out.writeLong(tailChecksum(channel, consumed));
+            writeCounts(out, wordCounts);
+            out.flush();
+            // checksum of everything above, itself not checksummed
+            out.writeInt((int) crc.getValue());
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Contents of a snapshot file.
+     */
+    private static final class Contents {
+
+        /**
+         * Length of the consumed prefix of the input.
+         */
+        private final long length;
+
+        /**
+         * Checksum of the head of the prefix.
+         */
+        private final long head;
+
+        /**
+         * Checksum of the tail of the prefix.
+         */
+        private final long tail;
+
+        /**
+         * Counts of the prefix.
+         */
+        private final WordCounts wordCounts;
+
+        /**
+         * Creates the contents of a snapshot.
+         *
+         * @param length
+         *            length of the consumed prefix
+         * @param head
+         *            checksum of the head of the prefix
+         * @param tail
+         *            checksum of the tail of the prefix
+         * @param wordCounts
+         *            counts of the prefix
+         */
+        Contents(long length, long head, long tail, WordCounts wordCounts) {
+            this.length = length;
+            this.head = head;
+            this.tail = tail;
+            this.wordCounts = wordCounts;
+        }
+    }
+
+    /**
+     * Loads the counts of {@code snapshot} if it is a valid snapshot of a
+     * prefix of the input, storing the prefix length in {@code consumed[0]}.
+     *
+     * @param snapshot
+     *            path of the snapshot file
+     * @param channel
+     *            channel of the input
+     * @param charset
+     *            charset the input is decoded with
+     * @param consumed
+     *            one-element array receiving the consumed prefix length
+     * @return the counts of the prefix, or null if there is no usable
+     *         snapshot (including a corrupt one)
+     * @throws IOException
+     *             if the input or the snapshot cannot be read
+     */
+    private static WordCounts load(Path snapshot, FileChannel channel,
+            Charset charset, long[] consumed) throws IOException {
+        Contents contents = readChecked(snapshot, in -> {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION
+                    || !in.readUTF().equals(charset.name())
+                    || !in.readUTF().equals(localeTag())) {
+                return null;
+            }
+            long length = readVarLong(in);
+            long head = in.readLong();
+            long tail = in.readLong();
+            return new Contents(length, head, tail, readCounts(in));
+        });
+        if (contents == null || contents.length > channel.size()
+                || contents.head != headChecksum(channel, contents.length)
+                || contents.tail != tailChecksum(channel, contents.length)) {
+            // no usable snapshot, or the input was truncated or rewritten
+            // since the snapshot
+            return null;
+        }
+        consumed[0] = contents.length;
+        return contents.wordCounts;
+    }
+
+    /**
+     * Returns the counts of every word in {@code file}, tokenizing only the
+     * bytes appended to it since {@code snapshot} was saved, and updates
+     * {@code snapshot} to cover every complete word of the file. If the
+     * snapshot is missing, corrupt, or does not match the start of the file,
+     * the whole file is counted. If the new words include one that
+     * lowercases to another length, the whole file is read again and no
+     * snapshot is saved. The counts are those of
+     * {@code TagCloud.generateWordMap(file)}.
+     *
+     * @param file
+     *            path of the append-only input file
+     * @param snapshot
+     *            path of its snapshot file
+     * @return a map containing all words in file and their counts
+     * @throws IOException
+     *             if the file cannot be read or the snapshot cannot be saved
+     */
+    public static WordCounts countIncrementally(Path file, Path snapshot)
+            throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (!ByteTokenizer.supports(charset)) {
+            return TagCloud.generateWordMap(file);
+        }
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] consumed = new long[1];
+            WordCounts wordCounts = load(snapshot, channel, charset, consumed);
+            if (wordCounts == null) {
+                wordCounts = new WordCounts();
+                consumed[0] = 0;
+            }
+
+            // count the appended words; the last one may still be growing,
+            // so it is left out of the snapshot but counted for this run
+            long boundary = lastBoundary(channel, consumed[0], size);
+            ByteWordTable table = new ByteWordTable(charset);
+            ByteTokenizer.countRange(channel, consumed[0], boundary, table);
+            ByteWordTable last = new ByteWordTable(charset);
+            ByteTokenizer.countRange(channel, boundary, size, last);
+            if (table.hasLengthChangingKey() || last.hasLengthChangingKey()) {
+                /*
+                 * The reader resumes after such words where the bytes did
+                 * not, so the whole file is counted like
+                 * TagCloud.generateWordMap counts it, and no snapshot is
+                 * saved whose offsets would disagree with the reader.
+                 */
+                return TagCloud.readWithReader(file, charset);
+            }
+            table.addTo(wordCounts);
+            if (boundary > consumed[0] || consumed[0] == 0) {
+                save(snapshot, wordCounts, channel, boundary, charset);
+            }
+            last.addTo(wordCounts);
+            return wordCounts;
+        }
+    }
+
+}
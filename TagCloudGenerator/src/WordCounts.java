@@ -0,0 +1,575 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Map from words to their counts, specialized for counting. Words are kept in
+ * an open-addressing hash table with linear probing; each distinct word gets a
+ * stable id (its insertion index) and its count, cached hash and key are held
+ * in plain arrays indexed by that id, so incrementing a word never boxes an
+ * {@code Integer} and never compares more than the colliding keys.
+ *
+ * <p>
+ * All {@code Map} operations are supported except removal of single words;
+ * {@link #clear()} empties the whole map. Iteration is in insertion order.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class WordCounts extends AbstractMap<String, Integer> {
+
+    /**
+     * Initial number of hash slots (must be a power of two).
+     */
+    private static final int INITIAL_SLOTS = 1 << 10;
+
+    /**
+     * Approximate heap footprint of a word, excluding its chars: the String
+     * and array headers, and the word's slots in the table.
+     */
+    private static final int BYTES_PER_WORD = 64;
+
+    /**
+     * Marks a char in {@code FOLD} whose lowercase form depends on its
+     * neighbours or is not a single char.
+     */
+    private static final char NO_FOLD = '\uFFFF';
+
+    /**
+     * Whether lowercasing depends on context in the default locale, as it
+     * does in the Turkish, Azerbaijani and Lithuanian locales, so that no char
+     * folds on its own.
+     */
+    private static final boolean CONTEXTUAL;
+
+    static {
+        String language = Locale.getDefault().getLanguage();
+        CONTEXTUAL = language.equals("tr") || language.equals("az")
+                || language.equals("lt");
+    }
+
+    /**
+     * Lowercase form of every char, as {@code String.toLowerCase()} maps it
+     * inside a word in the default locale, or {@code NO_FOLD} if the char
+     * does not lowercase on its own: surrogates, capital sigma (which
+     * lowercases differently at the end of a word), and chars such as dotted
+     * capital I that lowercase to more than one char. The table is split into
+     * blocks of 256 chars, each filled when a char of it is first folded,
+     * since lowercasing all 65,536 chars when the class loads takes tens of
+     * milliseconds, a large part of a one-off run.
+     */
+    private static final AtomicReferenceArray<char[]> FOLD =
+            new AtomicReferenceArray<>((Character.MAX_VALUE + 1) >>> 8);
+
+    /**
+     * The block of {@code FOLD} holding ASCII and Latin-1, which are folded
+     * by {@code Character.toLowerCase} exactly as by
+     * {@code String.toLowerCase()} and are filled when the class loads.
+     */
+    private static final char[] LATIN1 = new char[1 << 8];
+
+    static {
+        for (int c = 0; c < LATIN1.length; c++) {
+            LATIN1[c] = CONTEXTUAL ? NO_FOLD : Character.toLowerCase((char) c);
+        }
+        FOLD.set(0, LATIN1);
+    }
+
+    /**
+     * Returns the entry of {@code FOLD} for {@code c}, filling its block
+     * first if it is not filled yet.
+     *
+     * @param c
+     *            char to fold
+     * @return lowercase form of c, or {@code NO_FOLD}
+     */
+    private static char fold(char c) {
+        char[] block = FOLD.get(c >>> 8);
+        if (block == null) {
+            block = new char[1 << 8];
+            int base = c & ~0xFF;
+            for (int i = 0; i < block.length; i++) {
+                char d = (char) (base + i);
+                block[i] = NO_FOLD;
+                if (!CONTEXTUAL && d != '\u03A3' && !Character.isSurrogate(d)) {
+                    String lower = String.valueOf(d).toLowerCase();
+                    if (lower.length() == 1) {
+                        block[i] = lower.charAt(0);
+                    }
+                }
+            }
+            // threads filling the same block fill it alike
+            FOLD.set(c >>> 8, block);
+        }
+        return block[c & 0xFF];
+    }
+
+    /**
+     * Key of each id.
+     */
+    private String[] words;
+
+    /**
+     * Cached hash of each id's key.
+     */
+    private int[] hashes;
+
+    /**
+     * Count of each id.
+     */
+    private int[] counts;
+
+    /**
+     * Hash slots holding id + 1, or 0 for an empty slot.
+     */
+    private int[] slots;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Number of structural modifications, to detect concurrent modification
+     * while iterating.
+     */
+    private int modCount;
+
+    /**
+     * Scratch array the word given to {@link #increment(char[], int, int)} is
+     * folded into.
+     */
+    private char[] scratch = new char[64];
+
+    /**
+     * Entry set view, created on first use.
+     */
+    private Set<Map.Entry<String, Integer>> entrySet;
+
+    /**
+     * Creates an empty map.
+     */
+    public WordCounts() {
+        this.clear();
+    }
+
+    /**
+     * Creates a map holding the same words and counts as {@code m}.
+     *
+     * @param m
+     *            map whose words and counts are copied
+     */
+    public WordCounts(Map<String, Integer> m) {
+        this();
+        this.putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        this.words = new String[INITIAL_SLOTS / 2];
+        this.hashes = new int[INITIAL_SLOTS / 2];
+        this.counts = new int[INITIAL_SLOTS / 2];
+        this.slots = new int[INITIAL_SLOTS];
+        this.size = 0;
+        this.modCount++;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the approximate heap footprint of a word of {@code length}
+     * chars in a {@code WordCounts}: the String, its array, and its slots in
+     * the table.
+     *
+     * @param length
+     *            length of the word
+     * @return approximate footprint in bytes
+     */
+    static long footprint(int length) {
+        return BYTES_PER_WORD + 2L * length;
+    }
+
+    /**
+     * Returns the approximate heap footprint of the words and counts of this.
+     *
+     * @return approximate footprint in bytes
+     */
+    long footprint() {
+        long bytes = 0;
+        for (int id = 0; id < this.size; id++) {
+            bytes += footprint(this.words[id].length());
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the id of {@code word}, or -1 if it is not in this map.
+     *
+     * @param word
+     *            word to look up
+     * @return id of word, or -1
+     */
+    public int indexOf(String word) {
+        int h = word.hashCode();
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        int entry = this.slots[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == h && this.words[id].equals(word)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.slots[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the word with the given id.
+     *
+     * @param id
+     *            id of the word
+     * @return the word
+     * @requires 0 <= id < size()
+     */
+    public String word(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < |this|";
+        return this.words[id];
+    }
+
+    /**
+     * Returns the count of the word with the given id.
+     *
+     * @param id
+     *            id of the word
+     * @return the count
+     * @requires 0 <= id < size()
+     */
+    public int count(int id) {
+        assert 0 <= id && id < this.size : "Violation of: 0 <= id < |this|";
+        return this.counts[id];
+    }
+
+    /**
+     * Returns the count of {@code word}, or 0 if it is not in this map.
+     *
+     * @param word
+     *            word to look up
+     * @return count of word
+     */
+    public int count(String word) {
+        int id = this.indexOf(word);
+        if (id < 0) {
+            return 0;
+        }
+        return this.counts[id];
+    }
+
+    /**
+     * Adds one occurrence of {@code word}.
+     *
+     * @param word
+     *            word to count
+     * @return id of word
+     * @updates this
+     * @ensures count(word) = #count(word) + 1
+     */
+    public int increment(String word) {
+        return this.add(word, 1);
+    }
+
+    /**
+     * Adds one occurrence of the word held in {@code chars[from, to)},
+     * converted to lowercase. The word is folded and hashed directly in
+     * {@code chars}, so counting a word already in this map allocates nothing
+     * and counting a new word allocates only its key; words with chars that
+     * do not lowercase on their own are converted with
+     * {@code String.toLowerCase()} instead.
+     *
+     * @param chars
+     *            array holding the word
+     * @param from
+     *            index of the first char of the word
+     * @param to
+     *            index one past the last char of the word
+     * @return id of the word
+     * @requires 0 <= from <= to <= |chars|
+     * @updates this
+     * @ensures <pre>
+     * count(chars[from, to).toLowerCase()) =
+     *   #count(chars[from, to).toLowerCase()) + 1
+     * </pre>
+     */
+    public int increment(char[] chars, int from, int to) {
+        assert 0 <= from && from <= to && to <= chars.length
+                : "Violation of: 0 <= from <= to <= |chars|";
+
+        int len = to - from;
+        if (len > this.scratch.length) {
+            this.scratch = new char[Math.max(len, this.scratch.length * 2)];
+        }
+        char[] folded = this.scratch;
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            char c = chars[from + i];
+            c = c < LATIN1.length ? LATIN1[c] : fold(c);
+            if (c == NO_FOLD) {
+                return this.increment(
+                        new String(chars, from, len).toLowerCase());
+            }
+            folded[i] = c;
+            h = 31 * h + c;
+        }
+
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        int entry = this.slots[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == h && matches(this.words[id], folded, len)) {
+                this.counts[id]++;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.slots[slot];
+        }
+        return this.insert(slot, new String(folded, 0, len), h, 1);
+    }
+
+    /**
+     * Returns whether {@code word} consists of the chars {@code chars[0, len)}.
+     *
+     * @param word
+     *            the word
+     * @param chars
+     *            array holding the chars
+     * @param len
+     *            number of chars
+     * @return true iff word = chars[0, len)
+     */
+    private static boolean matches(String word, char[] chars, int len) {
+        if (word.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (word.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds {@code count} occurrences of {@code word}.
+     *
+     * @param word
+     *            word to count
+     * @param count
+     *            number of occurrences to add
+     * @return id of word
+     * @updates this
+     * @ensures count(word) = #count(word) + count
+     */
+    public int add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+
+        int h = word.hashCode();
+        int mask = this.slots.length - 1;
+        int slot = mix(h) & mask;
+        int entry = this.slots[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == h && this.words[id].equals(word)) {
+                this.counts[id] += count;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.slots[slot];
+        }
+        return this.insert(slot, word, h, count);
+    }
+
+    /**
+     * Returns a copy of this map. Its arrays are copied as they are rather
+     * than the words inserted one by one, so copying takes a few bulk array
+     * copies and no hashing.
+     *
+     * @return copy of this
+     */
+    WordCounts copy() {
+        WordCounts copy = new WordCounts();
+        copy.words = Arrays.copyOf(this.words, this.words.length);
+        copy.hashes = Arrays.copyOf(this.hashes, this.hashes.length);
+        copy.counts = Arrays.copyOf(this.counts, this.counts.length);
+        copy.slots = Arrays.copyOf(this.slots, this.slots.length);
+        copy.size = this.size;
+        return copy;
+    }
+
+    /**
+     * Adds every word and count of {@code other} to this map.
+     *
+     * @param other
+     *            counts to add
+     * @updates this
+     */
+    public void addAll(WordCounts other) {
+        for (int id = 0; id < other.size; id++) {
+            this.add(other.words[id], other.counts[id]);
+        }
+    }
+
+    /**
+     * Inserts a new word into the given empty slot.
+     *
+     * @param slot
+     *            empty slot to insert into
+     * @param word
+     *            the new word
+     * @param h
+     *            hash of the word
+     * @param count
+     *            initial count of the word
+     * @return id of the new word
+     */
+    private int insert(int slot, String word, int h, int count) {
+        int id = this.size;
+        if (id == this.counts.length) {
+            int cap = id * 2;
+            this.words = Arrays.copyOf(this.words, cap);
+            this.hashes = Arrays.copyOf(this.hashes, cap);
+            this.counts = Arrays.copyOf(this.counts, cap);
+        }
+        this.words[id] = word;
+        this.hashes[id] = h;
+        this.counts[id] = count;
+        this.slots[slot] = id + 1;
+        this.size++;
+        this.modCount++;
+
+        // keep the load factor at or below one half
+        if (this.size * 2 > this.slots.length) {
+            int[] grown = new int[this.slots.length * 2];
+            int mask = grown.length - 1;
+            for (int i = 0; i < this.size; i++) {
+                int s = mix(this.hashes[i]) & mask;
+                while (grown[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                grown[s] = i + 1;
+            }
+            this.slots = grown;
+        }
+        return id;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && this.indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int id = this.indexOf((String) key);
+        if (id < 0) {
+            return null;
+        }
+        return this.counts[id];
+    }
+
+    @Override
+    public Integer put(String key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        int id = this.indexOf(key);
+        if (id < 0) {
+            this.add(key, value);
+            return null;
+        }
+        int old = this.counts[id];
+        this.counts[id] = value;
+        return old;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return WordCounts.this.size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+        return this.entrySet;
+    }
+
+    /**
+     * Iterator over the entries of this map in insertion order.
+     */
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, Integer>> {
+
+        /**
+         * Id of the next entry.
+         */
+        private int next = 0;
+
+        /**
+         * Modification count this iterator was created at.
+         */
+        private final int expectedModCount = WordCounts.this.modCount;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < WordCounts.this.size;
+        }
+
+        @Override
+        public Map.Entry<String, Integer> next() {
+            if (WordCounts.this.modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int id = this.next++;
+            return new AbstractMap.SimpleImmutableEntry<>(
+                    WordCounts.this.words[id], WordCounts.this.counts[id]);
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash so that keys differing only in their last
+     * characters do not cluster in neighbouring slots.
+     *
+     * @param h
+     *            hash to spread
+     * @return spread hash
+     */
+    private static int mix(int h) {
+        int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+}
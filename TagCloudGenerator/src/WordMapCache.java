@@ -0,0 +1,278 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Folder of word maps of input files, keyed by the contents of the files, so
+ * that counting a file whose contents were counted before reads its map
+ * instead of tokenizing it again.
+ *
+ * <p>
+ * The key of a file is its length with a CRC-32C and an Adler-32 of its
+ * bytes, which is much cheaper to compute than tokenizing it. Each entry is a
+ * file named after its key holding the charset and locale the words were
+ * decoded and lowercased with and the words and counts in the format of
+ * {@code WordCountSnapshot.writeCounts}, followed by a CRC-32 of the entry.
+ * The modification time of an entry is the time it was last used; once the
+ * entries exceed the size budget, the least recently used are deleted.
+ *
+ * @author Austin Hendricks
+ *
+ */
+public final class WordMapCache {
+
+    /**
+     * Magic number at the start of every entry ("TCWM").
+     */
+    private static final int MAGIC = 0x5443574D;
+
+    /**
+     * Version of the entry format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Extension of the entry files.
+     */
+    private static final String EXTENSION = ".tcwm";
+
+    /**
+     * Size of the buffer the input is hashed through.
+     */
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Folder of the entries.
+     */
+    private final Path folder;
+
+    /**
+     * Largest total size of the entries, in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Creates a cache of word maps in {@code folder} whose entries take at
+     * most {@code budget} bytes.
+     *
+     * @param folder
+     *            folder of the entries, created when the first one is stored
+     * @param budget
+     *            largest total size of the entries in bytes
+     * @requires budget >= 0
+     */
+    public WordMapCache(Path folder, long budget) {
+        assert budget >= 0 : "Violation of: budget >= 0";
+        this.folder = folder;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the key of the current contents of {@code file}.
+     *
+     * @param file
+     *            the input file
+     * @return key of the contents of file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static String key(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        Adler32 adler = new Adler32();
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+            while (channel.read(buf) >= 0) {
+                buf.flip();
+                length += buf.remaining();
+                crc.update(buf);
+                buf.rewind();
+                adler.update(buf);
+                buf.clear();
+            }
+        }
+        return String.format("%x-%08x-%08x", length, crc.getValue(),
+                adler.getValue());
+    }
+
+    /**
+     * Returns the path of the entry of {@code key}.
+     *
+     * @param key
+     *            key of an input
+     * @return path of its entry
+     */
+    private Path entry(String key) {
+        return this.folder.resolve(key + EXTENSION);
+    }
+
+    /**
+     * Returns the word map cached under {@code key} for the default charset
+     * and locale, or null if there is none, and marks the entry as used. An
+     * entry that is damaged or was written for another charset or locale is
+     * deleted, and null is returned as if there were none.
+     *
+     * @param key
+     *            key of the input
+     * @return the cached word map, or null
+     * @throws IOException
+     *             if the entry exists but cannot be read or deleted
+     */
+    public WordCounts get(String key) throws IOException {
+        Path entry = this.entry(key);
+        WordCounts wordCounts = WordCountSnapshot.readChecked(entry, in -> {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION
+                    || !in.readUTF().equals(Charset.defaultCharset().name())
+                    || !in.readUTF().equals(WordCountSnapshot.localeTag())) {
+                return null;
+            }
+            return WordCountSnapshot.readCounts(in);
+        });
+        if (wordCounts == null) {
+            // a damaged or unusable entry would be read again by every run
+            // that is not allowed to replace it (e.g. over the budget)
+            Files.deleteIfExists(entry);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry,
+                    FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted by another run meanwhile
+        }
+        return wordCounts;
+    }
+
+    /**
+     * Caches {@code wordCounts} under {@code key}, then deletes the least
+     * recently used entries until the entries fit in the budget. A word map
+     * larger than the budget is not cached.
+     *
+     * @param key
+     *            key of the input
+     * @param wordCounts
+     *            word map of the input
+     * @throws IOException
+     *             if the entry cannot be written or the folder cannot be
+     *             listed
+     */
+    public void put(String key, WordCounts wordCounts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(bytes, crc))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(Charset.defaultCharset().name());
+            out.writeUTF(WordCountSnapshot.localeTag());
+            WordCountSnapshot.writeCounts(out, wordCounts);
+            out.flush();
+            // checksum of everything above, itself not checksummed
+            out.writeInt((int) crc.getValue());
+        }
+        if (bytes.size() > this.budget) {
+            return;
+        }
+        Files.createDirectories(this.folder);
+        TagCloud.writeFileAtomically(this.entry(key), bytes.toByteArray());
+        this.evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the entries take at most
+     * the budget.
+     *
+     * @throws IOException
+     *             if the folder cannot be listed or an entry cannot be deleted
+     */
+    private void evict() throws IOException {
+        Map<Path, BasicFileAttributes> entries = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(this.folder,
+                "*" + EXTENSION)) {
+            for (Path entry : dir) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class);
+                    entries.put(entry, attrs);
+                    total += attrs.size();
+                } catch (NoSuchFileException e) {
+                    // deleted by another run meanwhile
+                }
+            }
+        }
+        if (total <= this.budget) {
+            return;
+        }
+
+        List<Path> leastRecentFirst = new ArrayList<>(entries.keySet());
+        leastRecentFirst.sort(Comparator
+                .comparing(entry -> entries.get(entry).lastModifiedTime()));
+        for (Path entry : leastRecentFirst) {
+            if (total <= this.budget) {
+                break;
+            }
+            Files.deleteIfExists(entry);
+            total -= entries.get(entry).size();
+        }
+    }
+
+    /**
+     * Returns the word map of {@code file}, from the cache if its contents
+     * were counted before, otherwise counted by {@code counter} and cached.
+     *
+     * @param file
+     *            the input file
+     * @param counter
+     *            counter of the words of file
+     * @return a map containing all words in file and their counts
+     * @throws IOException
+     *             if the file cannot be read or counted
+     */
+    public WordCounts count(Path file, Counter counter) throws IOException {
+        String key = key(file);
+        WordCounts wordCounts = this.get(key);
+        if (wordCounts == null) {
+            wordCounts = counter.count();
+            this.put(key, wordCounts);
+        }
+        return wordCounts;
+    }
+
+    /**
+     * Counter of the words of an input.
+     */
+    @FunctionalInterface
+    public interface Counter {
+
+        /**
+         * Counts the words of the input.
+         *
+         * @return a map containing all words of the input and their counts
+         * @throws IOException
+         *             if the input cannot be read
+         */
+        WordCounts count() throws IOException;
+    }
+
+}